@@ -0,0 +1,91 @@
+package io.techasylum.kafka.statestore.document.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.techasylum.kafka.statestore.document.DocumentStores;
+import io.techasylum.kafka.statestore.document.internals.InternalMockProcessorContext;
+import io.techasylum.kafka.statestore.document.internals.MockRecordCollector;
+import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStore;
+import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStoreBuilder;
+import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Utils;
+import org.apache.kafka.streams.processor.StateStoreContext;
+import org.apache.kafka.streams.processor.internals.ProcessorStateManager;
+import org.apache.kafka.streams.state.StateSerdes;
+import org.dizitart.no2.Document;
+
+import static org.dizitart.no2.IndexOptions.indexOptions;
+import static org.dizitart.no2.IndexType.NonUnique;
+
+/**
+ * Sets up the stores of the benchmarks in a temporary state directory, with the mock processor context of the tests.
+ * <p>
+ * The documents hold a {@code category} with 100 distinct values, which is indexed, the same values in the
+ * {@code uncategorized} field, which is not, a random {@code score} to sort by and a number of padding fields to vary
+ * the size of the documents.
+ */
+final class BenchmarkStores {
+
+    static final String STORE_NAME = "benchmark";
+    static final int CATEGORIES = 100;
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    static final DocumentSerde<Document> SERDE = new DocumentSerde<>(Document.class, MAPPER);
+
+    private BenchmarkStores() {
+    }
+
+    static NitriteDocumentStoreBuilder<String, Document> builder() {
+        return DocumentStores.nitriteStore(STORE_NAME, "code", Serdes.String(), SERDE, (document) -> document)
+                .withIndex("category", indexOptions(NonUnique))
+                .withLoggingDisabled();
+    }
+
+    static InternalMockProcessorContext init(NitriteDocumentStore<String, Document> store, int partition, File stateDir) {
+        @SuppressWarnings("rawtypes") final InternalMockProcessorContext context = new InternalMockProcessorContext<>(
+                partition,
+                stateDir,
+                new StateSerdes<>(ProcessorStateManager.storeChangelogTopic("benchmark", STORE_NAME), Serdes.String(), Serdes.String()),
+                new MockRecordCollector()
+        );
+        store.init((StateStoreContext) context, store);
+        return context;
+    }
+
+    static File newStateDir() {
+        try {
+            return Files.createTempDirectory("nitrite-benchmark").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void delete(File stateDir) {
+        try {
+            Utils.delete(stateDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String key(int i) {
+        return "DOC" + i;
+    }
+
+    static Document document(int i, int paddingFields, Random random) {
+        Document document = Document.createDocument("code", key(i))
+                .put("category", "category-" + (i % CATEGORIES))
+                .put("uncategorized", "category-" + (i % CATEGORIES))
+                .put("score", random.nextDouble());
+        for (int field = 0; field < paddingFields; field++) {
+            document.put("field" + field, Long.toHexString(random.nextLong()));
+        }
+        return document;
+    }
+}
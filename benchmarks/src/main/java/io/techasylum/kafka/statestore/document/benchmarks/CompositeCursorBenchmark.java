@@ -0,0 +1,147 @@
+package io.techasylum.kafka.statestore.document.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.techasylum.kafka.statestore.document.composite.CompositeCursor;
+import io.techasylum.kafka.statestore.document.composite.CompositeFindOptions;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.Lookup;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.RecordIterable;
+import org.dizitart.no2.SortOrder;
+import org.dizitart.no2.objects.Cursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merges the pages of {@link #pageSize} documents returned by the stores of every partition into the page of a
+ * composite query, sorted by {@code score} and unsorted. The pages are held in memory, so only the merge is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompositeCursorBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int partitions;
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    @Param({"5", "50"})
+    public int paddingFields;
+
+    private final Map<Integer, List<Document>> pagesByPartition = new HashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int partition = 0; partition < partitions; partition++) {
+            List<Document> page = new ArrayList<>(pageSize);
+            for (int n = 0; n < pageSize; n++) {
+                Document document = BenchmarkStores.document(partition * pageSize + n, paddingFields, random);
+                document.getId();
+                page.add(document);
+            }
+            page.sort(Comparator.comparing((Document document) -> (Double) document.get("score")).reversed());
+            pagesByPartition.put(partition, page);
+        }
+    }
+
+    private Map<Integer, Cursor<Document>> cursors() {
+        Map<Integer, Cursor<Document>> cursors = new HashMap<>();
+        pagesByPartition.forEach((partition, page) -> cursors.put(partition, new PageCursor(page)));
+        return cursors;
+    }
+
+    @Benchmark
+    public CompositeCursor<Document> mergeSorted() {
+        return CompositeCursor.<Document>of(cursors(), CompositeFindOptions.sort("score", SortOrder.Descending).thenLimit(pageSize));
+    }
+
+    @Benchmark
+    public CompositeCursor<Document> mergeUnsorted() {
+        return CompositeCursor.<Document>of(cursors(), CompositeFindOptions.limit(Map.of(), pageSize));
+    }
+
+    /**
+     * A page of documents as returned by the store of a partition, with more documents to come.
+     */
+    private static final class PageCursor implements Cursor<Document> {
+
+        private final List<Document> page;
+
+        private PageCursor(List<Document> page) {
+            this.page = page;
+        }
+
+        @Override
+        public <P> RecordIterable<P> project(Class<P> projectionType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <Foreign, Joined> RecordIterable<Joined> join(Cursor<Foreign> foreignCursor, Lookup lookup, Class<Joined> type) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<NitriteId> idSet() {
+            Set<NitriteId> ids = new LinkedHashSet<>();
+            page.forEach((document) -> ids.add(document.getId()));
+            return ids;
+        }
+
+        @Override
+        public boolean hasMore() {
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return page.size();
+        }
+
+        @Override
+        public int totalCount() {
+            return page.size() * 10;
+        }
+
+        @Override
+        public Document firstOrDefault() {
+            return page.isEmpty() ? null : page.get(0);
+        }
+
+        @Override
+        public List<Document> toList() {
+            return page;
+        }
+
+        @Override
+        public Iterator<Document> iterator() {
+            return page.iterator();
+        }
+    }
+}
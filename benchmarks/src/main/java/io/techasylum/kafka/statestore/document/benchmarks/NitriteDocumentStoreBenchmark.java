@@ -0,0 +1,110 @@
+package io.techasylum.kafka.statestore.document.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStore;
+import org.apache.kafka.streams.KeyValue;
+import org.dizitart.no2.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The point operations of a store holding {@link #documents} documents: reads and updates of existing keys, batches
+ * of updates and deletes. Deleted keys are put back by the same operation, so the store keeps its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NitriteDocumentStoreBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"10000"})
+    public int documents;
+
+    @Param({"5", "50"})
+    public int paddingFields;
+
+    @Param({"false", "true"})
+    public boolean caching;
+
+    private File stateDir;
+    private NitriteDocumentStore<String, Document> store;
+    private Document[] updates;
+    private final Random random = new Random(42);
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stateDir = BenchmarkStores.newStateDir();
+        store = (caching ? BenchmarkStores.builder().withCachingEnabled() : BenchmarkStores.builder()).build();
+        BenchmarkStores.init(store, 0, stateDir);
+
+        updates = new Document[documents];
+        for (int i = 0; i < documents; i++) {
+            store.put(BenchmarkStores.key(i), BenchmarkStores.document(i, paddingFields, random));
+            updates[i] = BenchmarkStores.document(i, paddingFields, random);
+        }
+        store.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        BenchmarkStores.delete(stateDir);
+    }
+
+    private int nextIndex() {
+        next = (next + 7919) % documents;
+        return next;
+    }
+
+    @Benchmark
+    public Document get() {
+        return store.get(BenchmarkStores.key(nextIndex()));
+    }
+
+    @Benchmark
+    public void put() {
+        int i = nextIndex();
+        store.put(BenchmarkStores.key(i), updates[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void putAll() {
+        List<KeyValue<String, Document>> batch = new ArrayList<>(BATCH_SIZE);
+        for (int n = 0; n < BATCH_SIZE; n++) {
+            int i = nextIndex();
+            batch.add(KeyValue.pair(BenchmarkStores.key(i), updates[i]));
+        }
+        store.putAll(batch);
+    }
+
+    @Benchmark
+    public Document deleteAndPutBack() {
+        int i = nextIndex();
+        Document deleted = store.delete(BenchmarkStores.key(i));
+        store.put(BenchmarkStores.key(i), updates[i]);
+        return deleted;
+    }
+}
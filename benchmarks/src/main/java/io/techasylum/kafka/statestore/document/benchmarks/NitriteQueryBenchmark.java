@@ -0,0 +1,98 @@
+package io.techasylum.kafka.statestore.document.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStore;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.SortOrder;
+import org.dizitart.no2.filters.Filters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries selecting 1% of the documents through the index on {@code category} and by scanning {@code uncategorized},
+ * which holds the same values, and sorted pages of the top 10 documents by {@code score}. The documents of the results
+ * are read, as the cursors only convert them when they are accessed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NitriteQueryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int documents;
+
+    @Param({"5"})
+    public int paddingFields;
+
+    private File stateDir;
+    private NitriteDocumentStore<String, Document> store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stateDir = BenchmarkStores.newStateDir();
+        store = BenchmarkStores.builder().build();
+        BenchmarkStores.init(store, 0, stateDir);
+
+        Random random = new Random(42);
+        for (int i = 0; i < documents; i++) {
+            store.put(BenchmarkStores.key(i), BenchmarkStores.document(i, paddingFields, random));
+        }
+        store.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        BenchmarkStores.delete(stateDir);
+    }
+
+    private String nextCategory() {
+        next = (next + 1) % BenchmarkStores.CATEGORIES;
+        return "category-" + next;
+    }
+
+    @Benchmark
+    public List<Document> findIndexed() {
+        return store.find(Filters.eq("category", nextCategory())).toList();
+    }
+
+    @Benchmark
+    public List<Document> findScan() {
+        return store.find(Filters.eq("uncategorized", nextCategory())).toList();
+    }
+
+    @Benchmark
+    public List<Document> findWithOptionsSortLimit() {
+        return store.findWithOptions(FindOptions.sort("score", SortOrder.Descending).thenLimit(0, 10)).toList();
+    }
+
+    @Benchmark
+    public List<Document> findWithOptionsIndexedSortLimit() {
+        return store.findWithOptions(Filters.eq("category", nextCategory()), FindOptions.sort("score", SortOrder.Descending).thenLimit(0, 10)).toList();
+    }
+
+    @Benchmark
+    public List<Document> findWithOptionsLimit() {
+        return store.findWithOptions(FindOptions.limit(0, 10)).toList();
+    }
+}
@@ -0,0 +1,85 @@
+package io.techasylum.kafka.statestore.document.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.techasylum.kafka.statestore.document.internals.InternalMockProcessorContext;
+import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStore;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.dizitart.no2.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Restores batches of {@value #BATCH_SIZE} changelog records, the default number of records a restore consumer polls,
+ * into a store holding the same keys, so every record updates a document and its index entry. Reported per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NitriteRestoreBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int BATCHES = 10;
+
+    @Param({"5", "50"})
+    public int paddingFields;
+
+    private File stateDir;
+    private NitriteDocumentStore<String, Document> store;
+    private InternalMockProcessorContext context;
+    private final List<List<KeyValue<byte[], byte[]>>> batches = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stateDir = BenchmarkStores.newStateDir();
+        store = BenchmarkStores.builder().build();
+        context = BenchmarkStores.init(store, 0, stateDir);
+
+        Random random = new Random(42);
+        for (int batch = 0; batch < BATCHES; batch++) {
+            List<KeyValue<byte[], byte[]>> records = new ArrayList<>(BATCH_SIZE);
+            for (int n = 0; n < BATCH_SIZE; n++) {
+                int i = batch * BATCH_SIZE + n;
+                records.add(KeyValue.pair(
+                        Serdes.String().serializer().serialize("changelog", BenchmarkStores.key(i)),
+                        BenchmarkStores.SERDE.serializer().serialize("changelog", BenchmarkStores.document(i, paddingFields, random))));
+            }
+            batches.add(records);
+            context.restore(BenchmarkStores.STORE_NAME, records);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        BenchmarkStores.delete(stateDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void restore() {
+        next = (next + 1) % BATCHES;
+        context.restore(BenchmarkStores.STORE_NAME, batches.get(next));
+    }
+}
@@ -3,6 +3,7 @@ package io.techasylum.kafka.statestore.document;
 import java.util.function.Function;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.techasylum.kafka.statestore.document.no2.DocumentConverters;
 import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStoreBuilder;
 import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
 import org.apache.kafka.common.serialization.Serde;
@@ -15,7 +16,17 @@ public final class DocumentStores {
     }
 
     public static <Key, Doc extends Document> NitriteDocumentStoreBuilder<Key, Doc> nitriteStore(String name, String keyFieldName, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, Class<Doc> docClass, ObjectMapper objectMapper) {
-        return nitriteStore(name, keyFieldName, keySerde, valueSerde, (document) -> objectMapper.convertValue(document, docClass));
+        return nitriteStore(name, keyFieldName, keySerde, valueSerde, DocumentConverters.converter(docClass, objectMapper));
+    }
+
+    /**
+     * Creates a builder for a store writing its changelog in Smile rather than JSON, while still restoring values
+     * which were written in JSON.
+     *
+     * @see DocumentSerde#smile(Class, ObjectMapper, ObjectMapper)
+     */
+    public static <Key, Doc extends Document> NitriteDocumentStoreBuilder<Key, Doc> smileNitriteStore(String name, String keyFieldName, Serde<Key> keySerde, Class<Doc> docClass, ObjectMapper objectMapper, ObjectMapper smileMapper) {
+        return nitriteStore(name, keyFieldName, keySerde, DocumentSerde.smile(docClass, smileMapper, objectMapper), docClass, objectMapper);
     }
 
     public static <Key, Doc extends Document> NitriteDocumentStoreBuilder<Key, Doc> nitriteStore(String name, String keyFieldName, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, Function<Document, Doc> converter) {
@@ -0,0 +1,15 @@
+package io.techasylum.kafka.statestore.document;
+
+/**
+ * The use of a field by the filters and sort options of the queries executed on a store, for a field whose predicates
+ * scanned enough documents to recommend indexing it.
+ *
+ * @param field              the field
+ * @param equalityPredicates the number of {@code eq}, {@code in} and {@code notIn} predicates on the field
+ * @param rangePredicates    the number of {@code gt}, {@code gte}, {@code lt} and {@code lte} predicates on the field
+ * @param sorts              the number of queries sorted by the field
+ * @param scanned            the number of documents scanned to evaluate the predicates on the field without an index
+ * @param indexed            whether the field has been indexed since, as the index was created automatically
+ */
+public record IndexRecommendation(String field, long equalityPredicates, long rangePredicates, long sorts,
+                                  long scanned, boolean indexed) { }
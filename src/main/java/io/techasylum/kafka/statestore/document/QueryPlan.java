@@ -0,0 +1,59 @@
+package io.techasylum.kafka.statestore.document;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes how a query was executed, as a tree of steps. A query consists of a filter step, which is the tree of the
+ * nodes of the filter, followed by a step selecting the requested page out of the matches. The filter step is preceded
+ * by a {@code compound} step when the filter was evaluated against the documents selected by a compound index.
+ *
+ * @param operation the operation of the step, like the operator of a filter node, {@code compound}, {@code sort} or
+ *                  {@code page}
+ * @param field     the field the step applies to, the covered fields separated by commas for a {@code compound} step,
+ *                  or {@code null} if it doesn't apply to a single field
+ * @param indexed   whether the step was answered without reading documents, i.e. from an index
+ * @param scanned   the number of entries read by the step, including the entries read by its steps
+ * @param matched   the number of documents matched by the step
+ * @param time      the time the step took, including the time its steps took
+ * @param steps     the steps this step combines
+ */
+public record QueryPlan(String operation, String field, boolean indexed, long scanned, long matched, Duration time, List<QueryPlan> steps) {
+
+    /**
+     * Describes a query executed by a store which can't explain its queries, as a single {@code find} step. Whether it
+     * used an index and how many entries it read aren't known, so it is reported as not indexed and reading nothing.
+     *
+     * @param matched the number of documents the query returned
+     * @param time    the time the query took
+     * @return the plan of the query
+     */
+    public static QueryPlan unexplained(long matched, Duration time) {
+        return new QueryPlan("find", null, false, 0, matched, time, List.of());
+    }
+
+    /**
+     * Collects the steps reading documents rather than answering from an index, which are the candidates for an index
+     * when they scanned a lot more documents than they matched.
+     *
+     * @return the steps which scanned documents
+     */
+    public List<QueryPlan> scans() {
+        List<QueryPlan> scans = new ArrayList<>();
+        collectScans(scans);
+        return scans;
+    }
+
+    private void collectScans(List<QueryPlan> scans) {
+        if (steps.isEmpty()) {
+            if (!indexed && scanned > 0) {
+                scans.add(this);
+            }
+            return;
+        }
+        for (QueryPlan step : steps) {
+            step.collectScans(scans);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package io.techasylum.kafka.statestore.document;
 
 import java.util.Collections;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import io.techasylum.kafka.statestore.document.composite.CompositeIndexedDocumentStore;
 import io.techasylum.kafka.statestore.document.composite.CompositeReadOnlyDocumentStore;
@@ -44,6 +46,34 @@ public class QueryableDocumentStoreTypes {
         return new CompositeDocumentStoreType<>();
     }
 
+    /**
+     * A {@link QueryableStoreType} that accepts {@link ReadOnlyDocumentStore}, querying the stores of the local
+     * partitions concurrently on the given executor.
+     *
+     * @param executor the executor to run the queries of the individual partitions on
+     * @param <Key> key type of the store
+     * @param <Doc> document type of the store
+     * @return {@link CompositeDocumentStoreType}
+     */
+    public static <Key, Doc extends Document> QueryableStoreType<ReadOnlyCompositeDocumentStore<Key, Doc>> documentStore(Executor executor) {
+        return new CompositeDocumentStoreType<>(executor);
+    }
+
+    /**
+     * A {@link QueryableStoreType} that accepts {@link ReadOnlyDocumentStore}, querying the stores of the local
+     * partitions concurrently on the given executor and recording the queries exceeding the latency threshold of the
+     * given log. These entries record 0 scanned documents, the stores of the partitions record the documents they scan.
+     *
+     * @param executor the executor to run the queries of the individual partitions on
+     * @param slowQueryLog the log of slow queries
+     * @param <Key> key type of the store
+     * @param <Doc> document type of the store
+     * @return {@link CompositeDocumentStoreType}
+     */
+    public static <Key, Doc extends Document> QueryableStoreType<ReadOnlyCompositeDocumentStore<Key, Doc>> documentStore(Executor executor, SlowQueryLog slowQueryLog) {
+        return new CompositeDocumentStoreType<>(executor, Objects.requireNonNull(slowQueryLog, "slowQueryLog can't be null"));
+    }
+
     /**
      * A {@link QueryableStoreType} that accepts {@link IndexedDocumentStore}.
      *
@@ -75,13 +105,26 @@ public class QueryableDocumentStoreTypes {
 
     public static class CompositeDocumentStoreType<Key, Doc extends Document> extends QueryableDocumentStoreTypes.QueryableStoreTypeMatcher<ReadOnlyCompositeDocumentStore<Key, Doc>> {
 
+        private final Executor executor;
+        private final SlowQueryLog slowQueryLog;
+
         CompositeDocumentStoreType() {
+            this(CompositeReadOnlyDocumentStore.SAME_THREAD);
+        }
+
+        CompositeDocumentStoreType(final Executor executor) {
+            this(executor, null);
+        }
+
+        CompositeDocumentStoreType(final Executor executor, final SlowQueryLog slowQueryLog) {
             super(Collections.singleton(ReadOnlyDocumentStore.class));
+            this.executor = Objects.requireNonNull(executor, "executor can't be null");
+            this.slowQueryLog = slowQueryLog;
         }
 
         @Override
         public ReadOnlyCompositeDocumentStore<Key, Doc> create(final StateStoreProvider storeProvider, final String storeName) {
-            return new CompositeReadOnlyDocumentStore<>(storeProvider, new DocumentStoreType<>(), storeName);
+            return new CompositeReadOnlyDocumentStore<>(storeProvider, new DocumentStoreType<>(), storeName, executor, slowQueryLog);
         }
 
     }
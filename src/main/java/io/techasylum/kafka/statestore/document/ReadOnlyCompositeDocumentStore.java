@@ -1,8 +1,16 @@
 package io.techasylum.kafka.statestore.document;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 import io.techasylum.kafka.statestore.document.composite.CompositeCursor;
 import io.techasylum.kafka.statestore.document.composite.CompositeFindOptions;
+import io.techasylum.kafka.statestore.document.composite.CompositeQueryPlan;
+import org.apache.kafka.streams.KeyQueryMetadata;
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.errors.InvalidStateStorePartitionException;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.Filter;
 
@@ -44,6 +52,34 @@ public interface ReadOnlyCompositeDocumentStore<Key, Doc extends Document> {
      */
     CompositeCursor<Doc> findWithOptions(Filter filter, CompositeFindOptions options);
 
+    /**
+     * Explains a query on the stores of all partitions, reporting for every node of the filter whether it used an
+     * index, how many documents it scanned and matched, and how long it took.
+     *
+     * Stores which can't explain their queries only execute them, reporting a single plan for
+     * {@link SlowQueryLog#ALL_PARTITIONS}, see {@link QueryPlan#unexplained(long, Duration)}.
+     *
+     * @param filter  the filter to explain, or {@code null} to explain querying all objects.
+     * @param options specifies pagination, sort options for the query.
+     * @return the plans of the query by partition.
+     * @throws NullPointerException if `findOptions` is null.
+     */
+    default CompositeQueryPlan explain(Filter filter, CompositeFindOptions options) {
+        Objects.requireNonNull(options);
+        long start = System.nanoTime();
+        CompositeCursor<Doc> cursor = filter == null ? findWithOptions(options) : findWithOptions(filter, options);
+        return new CompositeQueryPlan(Map.of(SlowQueryLog.ALL_PARTITIONS, QueryPlan.unexplained(cursor.size(), Duration.ofNanos(System.nanoTime() - start))));
+    }
+
+    /**
+     * Recommends the fields to index in the stores of all partitions, see {@link ReadOnlyDocumentStore#recommendIndices()}.
+     *
+     * @return the recommended fields by partition, the most scanned first, or none if the stores don't record their
+     * queries.
+     */
+    default Map<Integer, List<IndexRecommendation>> recommendIndices() {
+        return Map.of();
+    }
 
     /**
      * Get the value corresponding to this key.
@@ -55,4 +91,35 @@ public interface ReadOnlyCompositeDocumentStore<Key, Doc extends Document> {
      */
     Doc get(Key key);
 
+    /**
+     * Get the value corresponding to this key from the store of the partition owning it, without querying the stores
+     * of the other partitions. Stores which can't query a single partition query all of them, see {@link #get(Object)}.
+     *
+     * @param key The key to fetch
+     * @param keyQueryMetadata The metadata of the key, as returned by {@link org.apache.kafka.streams.KafkaStreams#queryMetadataForKey}
+     * @return The value or null if no value is found.
+     * @throws NullPointerException if `key` or `keyQueryMetadata` is null.
+     * @throws InvalidStateStorePartitionException if the partition owning the key is not hosted by this instance
+     * @throws InvalidStateStoreException if the store is not initialized
+     */
+    default Doc get(Key key, KeyQueryMetadata keyQueryMetadata) {
+        Objects.requireNonNull(keyQueryMetadata);
+        return get(key, keyQueryMetadata.partition());
+    }
+
+    /**
+     * Get the value corresponding to this key from the store of the given partition, without querying the stores
+     * of the other partitions. Stores which can't query a single partition query all of them, see {@link #get(Object)}.
+     *
+     * @param key The key to fetch
+     * @param partition The partition owning the key
+     * @return The value or null if no value is found.
+     * @throws NullPointerException if `key` is null.
+     * @throws InvalidStateStorePartitionException if the partition is not hosted by this instance
+     * @throws InvalidStateStoreException if the store is not initialized
+     */
+    default Doc get(Key key, int partition) {
+        return get(key);
+    }
+
 }
@@ -1,10 +1,13 @@
 package io.techasylum.kafka.statestore.document;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.Filter;
 import org.dizitart.no2.FindOptions;
-import org.dizitart.no2.objects.Cursor;
 
 public interface ReadOnlyDocumentStore<Key, Doc extends Document> {
 
@@ -15,20 +18,26 @@ public interface ReadOnlyDocumentStore<Key, Doc extends Document> {
      * NOTE: If there is an index on the value specified in the filter, this operation
      * will take advantage of the index.
      *
+     * NOTE: The cursor holds a snapshot of the store until it has been iterated to the end or is closed, so a cursor
+     * which is not read to the end has to be closed, see {@link StreamingCursor}.
+     *
      * @param filter the filter to apply to select objects from the store.
-     * @return a cursor to all selected objects.
+     * @return a cursor to all selected objects, converted as they are iterated.
      * @throws NullPointerException if `filter` is null.
      */
-    Cursor<Doc> find(Filter filter);
+    StreamingCursor<Doc> find(Filter filter);
 
     /**
      * Returns a customized cursor to all objects in the store.
      *
+     * NOTE: The cursor holds a snapshot of the store until it has been iterated to the end or is closed, so a cursor
+     * which is not read to the end has to be closed, see {@link StreamingCursor}.
+     *
      * @param options specifies pagination, sort options for the cursor.
      * @return a cursor to all selected objects.
      * @throws NullPointerException if `findOptions` is null.
      */
-    Cursor<Doc> findWithOptions(FindOptions options);
+    StreamingCursor<Doc> findWithOptions(FindOptions options);
 
     /**
      * Applies a filter on the store and returns a customized cursor to the
@@ -37,13 +46,75 @@ public interface ReadOnlyDocumentStore<Key, Doc extends Document> {
      * NOTE: If there is an index on the value specified in the filter, this operation
      * will take advantage of the index.
      *
+     * NOTE: The cursor holds a snapshot of the store until it has been iterated to the end or is closed, so a cursor
+     * which is not read to the end has to be closed, see {@link StreamingCursor}.
+     *
      * @param filter      the filter to apply to select objects from collection.
      * @param options specifies pagination, sort options for the cursor.
      * @return a cursor to all selected objects.
      * @throws NullPointerException if `findOptions` is null.
      */
-    Cursor<Doc> findWithOptions(Filter filter, FindOptions options);
+    StreamingCursor<Doc> findWithOptions(Filter filter, FindOptions options);
+
+    /**
+     * Pins the current state of the store, so a query spanning several calls, like paging through the results of a
+     * composite query, can read the same state on every call. Snapshots are only kept for a limited time.
+     *
+     * Stores without snapshots don't pin anything and keep answering from their current state.
+     *
+     * @param snapshot the id of a snapshot pinned earlier, which is kept if it is still pinned, or {@code null}
+     * @return the id of the pinned snapshot, to query with {@link #findWithOptions(Filter, FindOptions, long)}, which
+     * differs from the requested one if that is no longer pinned
+     */
+    default long pinSnapshot(Long snapshot) {
+        return snapshot == null ? 0L : snapshot;
+    }
 
+    /**
+     * Applies a filter on a snapshot pinned by {@link #pinSnapshot(Long)} and returns a customized cursor to the
+     * selected objects.
+     *
+     * NOTE: The cursor holds a snapshot of the store until it has been iterated to the end or is closed, so a cursor
+     * which is not read to the end has to be closed, see {@link StreamingCursor}.
+     *
+     * @param filter   the filter to apply to select objects from collection.
+     * @param options  specifies pagination, sort options for the cursor.
+     * @param snapshot the id of the pinned snapshot.
+     * @return a cursor to all selected objects.
+     * @throws NullPointerException if `findOptions` is null.
+     * @throws SnapshotExpiredException if the snapshot is no longer pinned.
+     */
+    default StreamingCursor<Doc> findWithOptions(Filter filter, FindOptions options, long snapshot) {
+        return findWithOptions(filter, options);
+    }
+
+    /**
+     * Executes a query to explain it, reporting for every node of the filter whether it used an index, how many
+     * documents it scanned and matched, and how long it took, followed by the step selecting the requested page.
+     *
+     * Stores which can't explain their queries only execute them, see {@link QueryPlan#unexplained(long, Duration)}.
+     *
+     * @param filter  the filter to explain, or {@code null} to explain querying all objects.
+     * @param options specifies pagination, sort options for the query.
+     * @return the plan of the query.
+     * @throws NullPointerException if `findOptions` is null.
+     */
+    default QueryPlan explain(Filter filter, FindOptions options) {
+        Objects.requireNonNull(options);
+        long start = System.nanoTime();
+        StreamingCursor<Doc> cursor = filter == null ? findWithOptions(options) : findWithOptions(filter, options);
+        return QueryPlan.unexplained(cursor.size(), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Recommends the fields to index, as the predicates of the executed queries on these fields scanned the documents
+     * of the store, rather than looking them up in an index.
+     *
+     * @return the recommended fields, the most scanned first, or none if the store doesn't record its queries.
+     */
+    default List<IndexRecommendation> recommendIndices() {
+        return List.of();
+    }
 
     /**
      * Get the value corresponding to this key.
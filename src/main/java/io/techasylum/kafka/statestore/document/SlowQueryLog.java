@@ -0,0 +1,204 @@
+package io.techasylum.kafka.statestore.document;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.filters.FilterNodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.dizitart.no2.util.StringUtils.isNullOrEmpty;
+
+/**
+ * Logs the queries which take longer or scan more documents than the configured thresholds and keeps the statistics
+ * of the most expensive ones, so the interactive queries causing scans can be found while the application is
+ * running. A single log can be shared by the stores of all partitions and by the composite store querying them.
+ * <p>
+ * Queries are identified by the fingerprint of their filter, which keeps the fields and operators but leaves out the
+ * values, e.g. {@code and(eq(genre),gt(year)) sort(year)}, so the executions of a query with different parameters add
+ * up. The statistics are kept by store, fingerprint and partition, the composite store records its queries with
+ * {@link #ALL_PARTITIONS}. The entries of the composite store only measure latency: it doesn't know how many
+ * documents the partitions read, so they record 0 scanned documents and are only logged above the latency threshold.
+ * The documents scanned are recorded by the entries of the partitions. Only the statistics of the most expensive fingerprints by total time are retained, the
+ * cheapest are dropped once the log is full.
+ */
+public class SlowQueryLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    public static final int ALL_PARTITIONS = -1;
+    public static final int DEFAULT_TOP = 20;
+
+    private final long latencyThresholdNanos;
+    private final long scannedThreshold;
+    private final int top;
+    private final int capacity;
+    private final Map<QueryKey, Stats> stats = new HashMap<>();
+
+    /**
+     * Logs the queries taking longer than the given threshold and keeps the {@value #DEFAULT_TOP} most expensive.
+     *
+     * @param latencyThreshold the latency above which a query is slow
+     */
+    public SlowQueryLog(Duration latencyThreshold) {
+        this(latencyThreshold, Long.MAX_VALUE, DEFAULT_TOP);
+    }
+
+    /**
+     * @param latencyThreshold the latency above which a query is slow
+     * @param scannedThreshold the number of documents read to evaluate the filter and sort the result above which a
+     *                         query is slow, however fast
+     * @param top              the number of fingerprints to report by {@link #top()}
+     */
+    public SlowQueryLog(Duration latencyThreshold, long scannedThreshold, int top) {
+        Objects.requireNonNull(latencyThreshold, "latencyThreshold can't be null");
+        if (latencyThreshold.isNegative()) {
+            throw new IllegalArgumentException("latencyThreshold can't be negative");
+        }
+        if (scannedThreshold < 0) {
+            throw new IllegalArgumentException("scannedThreshold can't be negative");
+        }
+        if (top <= 0) {
+            throw new IllegalArgumentException("top must be positive");
+        }
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.scannedThreshold = scannedThreshold;
+        this.top = top;
+        this.capacity = top * 10;
+    }
+
+    /**
+     * Records a query, which is only logged and counted if it exceeds one of the thresholds.
+     *
+     * @param store       the name of the store
+     * @param partition   the partition of the store or {@link #ALL_PARTITIONS} for the composite store
+     * @param fingerprint the fingerprint of the query, see {@link #fingerprint(Filter, FindOptions)}
+     * @param nanos       the time it took to evaluate the query
+     * @param scanned     the number of documents read to evaluate the query, or 0 if unknown
+     * @param returned    the number of documents returned
+     * @return whether the query was slow
+     */
+    public boolean record(String store, int partition, String fingerprint, long nanos, long scanned, long returned) {
+        if (nanos <= latencyThresholdNanos && scanned <= scannedThreshold) {
+            return false;
+        }
+        logger.warn("Slow query on store {} partition {}: {} took {} ms, scanned {} and returned {} documents",
+                store, partition == ALL_PARTITIONS ? "all" : partition, fingerprint, nanos / 1_000_000.0, scanned, returned);
+
+        synchronized (stats) {
+            stats.computeIfAbsent(new QueryKey(store, fingerprint, partition), key -> new Stats()).add(nanos, scanned, returned);
+            if (stats.size() > capacity) {
+                stats.entrySet().stream()
+                        .min(Comparator.comparingLong(entry -> entry.getValue().totalNanos))
+                        .ifPresent(cheapest -> stats.remove(cheapest.getKey()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the statistics of the most expensive slow queries by total time, the most expensive first
+     */
+    public List<SlowQuery> top() {
+        synchronized (stats) {
+            return stats.entrySet().stream()
+                    .map(entry -> entry.getValue().toSlowQuery(entry.getKey()))
+                    .sorted(Comparator.comparing(SlowQuery::totalTime).reversed())
+                    .limit(top)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Forgets the statistics of all slow queries.
+     */
+    public void reset() {
+        synchronized (stats) {
+            stats.clear();
+        }
+    }
+
+    /**
+     * Normalizes a query into the operators and fields of its filter and the field it is sorted by, leaving out the
+     * values, so all executions of the same query share the fingerprint.
+     *
+     * @param filter  the filter of the query or {@code null} if it selects all documents
+     * @param options the options of the query or {@code null}
+     * @return the fingerprint
+     */
+    public static String fingerprint(Filter filter, FindOptions options) {
+        StringBuilder fingerprint = new StringBuilder();
+        if (filter == null) {
+            fingerprint.append("all");
+        } else {
+            appendFingerprint(fingerprint, filter);
+        }
+        if (options != null && !isNullOrEmpty(options.getField())) {
+            fingerprint.append(" sort(").append(options.getField()).append(')');
+        }
+        return fingerprint.toString();
+    }
+
+    private static void appendFingerprint(StringBuilder fingerprint, Filter filter) {
+        fingerprint.append(FilterNodes.operator(filter)).append('(');
+        List<Filter> children = FilterNodes.children(filter);
+        if (children.isEmpty()) {
+            String field = FilterNodes.field(filter);
+            fingerprint.append(field == null ? "" : field);
+        } else {
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    fingerprint.append(',');
+                }
+                appendFingerprint(fingerprint, children.get(i));
+            }
+        }
+        fingerprint.append(')');
+    }
+
+    /**
+     * The statistics of the slow executions of a query.
+     *
+     * @param store       the name of the store
+     * @param fingerprint the fingerprint of the query
+     * @param partition   the partition of the store or {@link #ALL_PARTITIONS} for the composite store
+     * @param count       the number of slow executions
+     * @param totalTime   the time of all slow executions
+     * @param maxTime     the time of the slowest execution
+     * @param scanned     the number of documents read by all slow executions
+     * @param returned    the number of documents returned by all slow executions
+     */
+    public record SlowQuery(String store, String fingerprint, int partition, long count, Duration totalTime,
+                            Duration maxTime, long scanned, long returned) { }
+
+    private record QueryKey(String store, String fingerprint, int partition) { }
+
+    private static final class Stats {
+
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long scanned;
+        private long returned;
+
+        void add(long nanos, long scanned, long returned) {
+            this.count++;
+            this.totalNanos += nanos;
+            this.maxNanos = Math.max(this.maxNanos, nanos);
+            this.scanned += scanned;
+            this.returned += returned;
+        }
+
+        SlowQuery toSlowQuery(QueryKey key) {
+            return new SlowQuery(key.store(), key.fingerprint(), key.partition(), count, Duration.ofNanos(totalNanos),
+                    Duration.ofNanos(maxNanos), scanned, returned);
+        }
+    }
+}
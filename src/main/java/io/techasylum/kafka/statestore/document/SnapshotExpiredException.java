@@ -0,0 +1,13 @@
+package io.techasylum.kafka.statestore.document;
+
+/**
+ * Thrown when a query asks for a snapshot which is no longer pinned, as it expired or too many other snapshots were
+ * pinned since. Answering from the current state instead could shift documents between the pages of a query, so the
+ * query has to start over from its first page.
+ */
+public class SnapshotExpiredException extends RuntimeException {
+
+    public SnapshotExpiredException(String storeName, int partition, long snapshot) {
+        super(String.format("Snapshot %d of store %s for partition %d is no longer pinned, the query has to start over", snapshot, storeName, partition));
+    }
+}
@@ -0,0 +1,44 @@
+package io.techasylum.kafka.statestore.document;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.dizitart.no2.Document;
+import org.dizitart.no2.objects.Cursor;
+
+/**
+ * A {@link Cursor} which can be consumed as a {@link Stream}.
+ * <p>
+ * Documents are only looked up and converted when the stream reaches them, so short-circuiting operations such as
+ * {@link Stream#limit(long)} or {@link Stream#findFirst()} only pay for the documents they consume, and
+ * {@link Stream#count()} is answered from the size of the result set without converting any document.
+ * <p>
+ * A cursor resolving its documents lazily holds on to the state it reads them from, like a snapshot of the store, until
+ * it has been iterated to the end or is closed. Cursors which are not read to the end have to be closed, as well as the
+ * streams over them, a cursor which was can't be iterated again.
+ *
+ * @param <Doc> the type of the documents
+ */
+public interface StreamingCursor<Doc extends Document> extends Cursor<Doc>, AutoCloseable {
+
+    /**
+     * Returns a sequential stream over the documents of the cursor, in the order of the cursor. Closing the stream
+     * closes the cursor.
+     *
+     * @return a stream of the documents.
+     */
+    default Stream<Doc> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Releases the state the cursor reads its documents from, its documents must not be read afterwards.
+     */
+    @Override
+    default void close() {
+    }
+
+}
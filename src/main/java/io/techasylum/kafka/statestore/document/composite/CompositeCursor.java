@@ -4,6 +4,7 @@ import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -11,12 +12,14 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.techasylum.kafka.statestore.document.StreamingCursor;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.KeyValuePair;
 import org.dizitart.no2.Lookup;
@@ -31,6 +34,8 @@ import org.dizitart.no2.util.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static io.techasylum.kafka.statestore.document.no2.SortComparators.sortValue;
+import static io.techasylum.kafka.statestore.document.no2.SortComparators.sortValueComparator;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.counting;
 import static org.dizitart.no2.exceptions.ErrorMessage.PROJECTION_WITH_NOT_NULL_VALUES;
@@ -39,7 +44,7 @@ import static org.dizitart.no2.exceptions.ErrorMessage.UNABLE_TO_SORT_ON_ARRAY;
 import static org.dizitart.no2.util.DocumentUtils.getFieldValue;
 import static org.dizitart.no2.util.StringUtils.isNullOrEmpty;
 
-public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
+public class CompositeCursor<Doc extends Document> implements StreamingCursor<Doc> {
 
     private static final Logger logger = LoggerFactory.getLogger(CompositeCursor.class);
 
@@ -58,18 +63,27 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
     @JsonProperty
     private final int totalCount;
 
+    @JsonProperty
+    private final Map<Integer, Long> snapshots;
+
     protected CompositeCursor() {
         this(Map.of(), Set.of(), Map.of(), false, 0);
     }
 
+    public CompositeCursor(Map<NitriteId, Doc> documents, Set<NitriteId> resultSet, Map<Integer, Integer> nextOffsets, boolean hasMore, int totalCount) {
+        this(documents, resultSet, nextOffsets, hasMore, totalCount, Map.of());
+    }
+
     @JsonCreator
     public CompositeCursor(@JsonProperty("documents") Map<NitriteId, Doc> documents, @JsonProperty("resultSet") Set<NitriteId> resultSet,
-            @JsonProperty("nextOffsets") Map<Integer, Integer> nextOffsets, @JsonProperty("hasMore") boolean hasMore, @JsonProperty("totalCount") int totalCount) {
+            @JsonProperty("nextOffsets") Map<Integer, Integer> nextOffsets, @JsonProperty("hasMore") boolean hasMore, @JsonProperty("totalCount") int totalCount,
+            @JsonProperty("snapshots") Map<Integer, Long> snapshots) {
         this.documents = documents;
         this.nextOffsets = nextOffsets;
         this.resultSet = resultSet;
         this.hasMore = hasMore;
         this.totalCount = totalCount;
+        this.snapshots = snapshots == null ? Map.of() : snapshots;
     }
 
     public Map<NitriteId, Doc> documents() {
@@ -84,6 +98,22 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
         return Collections.unmodifiableSet(resultSet);
     }
 
+    /**
+     * @return the ids of the snapshots the partitions were queried on, to query the next page with through
+     * {@link CompositeFindOptions#withSnapshots(Map)}.
+     */
+    public Map<Integer, Long> snapshots() {
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * @param snapshots the ids of the snapshots the partitions were queried on
+     * @return a copy of this cursor holding the ids of the snapshots
+     */
+    public CompositeCursor<Doc> withSnapshots(Map<Integer, Long> snapshots) {
+        return new CompositeCursor<>(documents, resultSet, nextOffsets, hasMore, totalCount, snapshots);
+    }
+
     @Override
     public boolean hasMore() {
         return hasMore;
@@ -110,7 +140,7 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
 
     @Override
     public Iterator<Doc> iterator() {
-        return new CompositeCursor.DocumentCursorIterator();
+        return new DocumentCursorIterator();
     }
 
     @Override
@@ -180,6 +210,7 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
                 ", resultSet=" + resultSet +
                 ", hasMore=" + hasMore +
                 ", totalCount=" + totalCount +
+                ", snapshots=" + snapshots +
                 '}';
     }
 
@@ -217,7 +248,22 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
         return CompositeCursor.of(cursorsByPartition, null);
     }
 
-    public static <Doc extends Document> CompositeCursor of(Map<Integer, Cursor<Doc>> cursorsByPartition, CompositeFindOptions compositeFindOptions) {
+    /**
+     * Combines the cursors of the individual partitions into a single cursor.
+     * <p>
+     * When the options hold a sort field, the cursors are expected to be sorted on that field already, as returned by
+     * querying each partition with {@link CompositeFindOptions#getFindOptionsForPartition(int)}. They are then merged
+     * lazily, only converting and keeping the documents which make it into the requested page.
+     *
+     * @param cursorsByPartition the cursors by partition
+     * @param compositeFindOptions the options the partitions were queried with, can be {@code null}
+     * @return the composite cursor
+     */
+    public static <Doc extends Document> CompositeCursor<Doc> of(Map<Integer, Cursor<Doc>> cursorsByPartition, CompositeFindOptions compositeFindOptions) {
+        if (compositeFindOptions != null && !isNullOrEmpty(compositeFindOptions.getField())) {
+            return mergeSorted(cursorsByPartition, compositeFindOptions);
+        }
+
         Map<NitriteId, Doc> documents = extractDocumentsFromCursors(cursorsByPartition);
         Set<NitriteId> nitriteIdSet = documents.keySet();
 
@@ -228,11 +274,7 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
             Set<NitriteId> originalNitriteIdSet = new HashSet<>(nitriteIdSet);
 
             if (compositeFindOptions != null) {
-                if (isNullOrEmpty(compositeFindOptions.getField())) {
-                    nitriteIdSet = limitDocuments(originalNitriteIdSet, compositeFindOptions);
-                } else {
-                    nitriteIdSet = sortDocuments(documents, compositeFindOptions);
-                }
+                nitriteIdSet = limitDocuments(originalNitriteIdSet, compositeFindOptions);
             }
             totalCount = cursorsByPartition.values().stream().mapToInt(Cursor::totalCount).sum();
             documents.keySet().retainAll(nitriteIdSet);
@@ -247,6 +289,74 @@ public class CompositeCursor<Doc extends Document> implements Cursor<Doc> {
         return cursor;
     }
 
+    private static <Doc extends Document> CompositeCursor<Doc> mergeSorted(Map<Integer, Cursor<Doc>> cursorsByPartition, CompositeFindOptions compositeFindOptions) {
+        PriorityQueue<PartitionHead<Doc>> heads = new PriorityQueue<>(partitionHeadComparator(compositeFindOptions));
+        for (Map.Entry<Integer, Cursor<Doc>> cursorEntry : cursorsByPartition.entrySet()) {
+            PartitionHead<Doc> head = PartitionHead.of(cursorEntry.getKey(), cursorEntry.getValue().iterator(), compositeFindOptions.getField());
+            if (head != null) {
+                heads.add(head);
+            }
+        }
+
+        int size = compositeFindOptions.getSize();
+        Map<NitriteId, Doc> documents = new HashMap<>();
+        Set<NitriteId> nitriteIdSet = new LinkedHashSet<>();
+        while (!heads.isEmpty() && (size <= 0 || nitriteIdSet.size() < size)) {
+            PartitionHead<Doc> head = heads.poll();
+            head.document.put("_pid", head.partition);
+            documents.put(head.document.getId(), head.document);
+            nitriteIdSet.add(head.document.getId());
+
+            PartitionHead<Doc> next = PartitionHead.of(head.partition, head.remaining, compositeFindOptions.getField());
+            if (next != null) {
+                heads.add(next);
+            }
+        }
+
+        int totalCount = cursorsByPartition.values().stream().mapToInt(Cursor::totalCount).sum();
+        boolean hasMore = !heads.isEmpty() || cursorsByPartition.values().stream().anyMatch(RecordIterable::hasMore);
+        Map<Integer, Integer> nextOffsets = calculateNextOffsets(cursorsByPartition, nitriteIdSet, documents, compositeFindOptions);
+
+        CompositeCursor<Doc> cursor = new CompositeCursor<>(documents, nitriteIdSet, nextOffsets, hasMore, totalCount);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Returning {} merged from sorted cursors by partition {} using {}", cursor, cursorsByPartition, compositeFindOptions);
+        }
+        return cursor;
+    }
+
+    /**
+     * Orders the heads of the partitions the same way {@link #sortDocuments(Map, CompositeFindOptions)} orders documents,
+     * falling back to the partition to keep the order of equal values stable.
+     */
+    private static <Doc extends Document> Comparator<PartitionHead<Doc>> partitionHeadComparator(CompositeFindOptions findOptions) {
+        return Comparator.<PartitionHead<Doc>, Object>comparing((head) -> head.value, sortValueComparator(findOptions))
+                .thenComparingInt((head) -> head.partition);
+    }
+
+    private static final class PartitionHead<Doc extends Document> {
+        private final int partition;
+        private final Doc document;
+        private final Object value;
+        private final Iterator<Doc> remaining;
+
+        private PartitionHead(int partition, Doc document, Object value, Iterator<Doc> remaining) {
+            this.partition = partition;
+            this.document = document;
+            this.value = value;
+            this.remaining = remaining;
+        }
+
+        private static <Doc extends Document> PartitionHead<Doc> of(int partition, Iterator<Doc> iterator, String sortField) {
+            while (iterator.hasNext()) {
+                Doc document = iterator.next();
+                if (document == null) continue;
+
+                return new PartitionHead<>(partition, document, sortValue(document, sortField), iterator);
+            }
+            return null;
+        }
+    }
+
     private static <Doc extends Document> Map<NitriteId, Doc> extractDocumentsFromCursors(List<CompositeCursor<Doc>> compositeCursors) {
         Map<NitriteId, Doc> documents = new HashMap<>();
         for (CompositeCursor<Doc> compositeCursor : compositeCursors) {
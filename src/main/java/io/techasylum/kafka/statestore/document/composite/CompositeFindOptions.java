@@ -17,6 +17,8 @@ public class CompositeFindOptions extends FindOptions {
 
     private Map<Integer, Integer> offsetsByPartition = Map.of();
 
+    private Map<Integer, Long> snapshotsByPartition = Map.of();
+
     /**
      * Instantiates a new find options with pagination criteria.
      *
@@ -162,8 +164,36 @@ public class CompositeFindOptions extends FindOptions {
         return this;
     }
 
+    /**
+     * Queries the snapshots the partitions pinned for a previous page, as returned by
+     * {@link CompositeCursor#snapshots()}, so all pages of a query read the same state of the partitions.
+     *
+     * @param snapshotsByPartition the ids of the pinned snapshots per partition.
+     * @return the find options querying the snapshots.
+     */
+    @JsonProperty("snapshotsByPartition")
+    public CompositeFindOptions withSnapshots(Map<Integer, Long> snapshotsByPartition) {
+        this.snapshotsByPartition = snapshotsByPartition == null ? Map.of() : snapshotsByPartition;
+        return this;
+    }
+
+    /**
+     * Creates the options to query a single partition with, leaving these options untouched so the partitions can be
+     * queried concurrently.
+     *
+     * The sorting criteria and the page size are pushed down to the partition, so each partition only returns its
+     * best {@code size} documents from its own offset, already sorted. The composite cursor then merges at most
+     * {@code size} documents per partition into the requested page.
+     *
+     * @param partition the partition to query
+     * @return the find options with the sorting criteria and the pagination offset of the partition.
+     */
     public CompositeFindOptions getFindOptionsForPartition(int partition) {
-        return (CompositeFindOptions) thenLimit(getOffsetForPartition(partition), getSize());
+        CompositeFindOptions findOptions = new CompositeFindOptions(getField(), getSortOrder(), getCollator(), getNullOrder());
+        findOptions.offsetsByPartition = offsetsByPartition;
+        findOptions.snapshotsByPartition = snapshotsByPartition;
+        findOptions.thenLimit(getOffsetForPartition(partition).intValue(), getSize());
+        return findOptions;
     }
 
     public Integer getOffsetForPartition(int partition) {
@@ -181,11 +211,24 @@ public class CompositeFindOptions extends FindOptions {
         return offsetsByPartition;
     }
 
+    /**
+     * @param partition the partition
+     * @return the id of the snapshot pinned for the partition or {@code null} if none was pinned yet.
+     */
+    public Long getSnapshotForPartition(int partition) {
+        return snapshotsByPartition.get(partition);
+    }
+
+    public Map<Integer, Long> getSnapshotsByPartition() {
+        return snapshotsByPartition;
+    }
+
     @Override
     public String toString() {
         return "CompositeFindOptions{" +
                 "super=" + super.toString() +
                 "offsetsByPartition=" + offsetsByPartition +
+                ", snapshotsByPartition=" + snapshotsByPartition +
                 '}';
     }
 
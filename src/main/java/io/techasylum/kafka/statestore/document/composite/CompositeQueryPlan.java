@@ -0,0 +1,61 @@
+package io.techasylum.kafka.statestore.document.composite;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.techasylum.kafka.statestore.document.QueryPlan;
+
+/**
+ * The plans of a query for all partitions it was sent to, with the totals across the partitions.
+ *
+ * @param partitions the plans by partition
+ */
+public record CompositeQueryPlan(Map<Integer, QueryPlan> partitions) {
+
+    /**
+     * @return the number of entries read by all partitions
+     */
+    public long scanned() {
+        return partitions.values().stream().mapToLong(QueryPlan::scanned).sum();
+    }
+
+    /**
+     * @return the number of documents the partitions returned, before merging them into a single page
+     */
+    public long matched() {
+        return partitions.values().stream().mapToLong(QueryPlan::matched).sum();
+    }
+
+    /**
+     * @return whether all partitions answered the filter from their indices
+     */
+    public boolean indexed() {
+        return partitions.values().stream().allMatch(QueryPlan::indexed);
+    }
+
+    /**
+     * Partitions are queried concurrently when the composite store has a concurrent executor, in which case the latency
+     * of the query follows the slowest partition.
+     *
+     * @return the time the slowest partition took
+     */
+    public Duration slowest() {
+        return partitions.values().stream().map(QueryPlan::time).max(Duration::compareTo).orElse(Duration.ZERO);
+    }
+
+    /**
+     * @return the steps which scanned documents by partition, leaving out the partitions without any
+     */
+    public Map<Integer, List<QueryPlan>> scans() {
+        Map<Integer, List<QueryPlan>> scans = new TreeMap<>();
+        partitions.forEach((partition, plan) -> {
+            List<QueryPlan> partitionScans = plan.scans();
+            if (!partitionScans.isEmpty()) {
+                scans.put(partition, partitionScans);
+            }
+        });
+        return scans;
+    }
+}
@@ -1,17 +1,28 @@
 package io.techasylum.kafka.statestore.document.composite;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import io.techasylum.kafka.statestore.document.IndexRecommendation;
 import io.techasylum.kafka.statestore.document.ReadOnlyCompositeDocumentStore;
 import io.techasylum.kafka.statestore.document.ReadOnlyDocumentStore;
+import io.techasylum.kafka.statestore.document.SlowQueryLog;
+import io.techasylum.kafka.statestore.document.SnapshotExpiredException;
+import io.techasylum.kafka.statestore.document.StreamingCursor;
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.errors.InvalidStateStorePartitionException;
 import org.apache.kafka.streams.state.QueryableStoreType;
 import org.apache.kafka.streams.state.internals.StateStoreProvider;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.Filter;
+import org.dizitart.no2.FindOptions;
 import org.dizitart.no2.objects.Cursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +30,18 @@ import org.slf4j.LoggerFactory;
 /**
  * A wrapper over the underlying {@link ReadOnlyCompositeDocumentStore}s found in a {@link
  * org.apache.kafka.streams.processor.internals.ProcessorTopology}
+ * <p>
+ * Queries are sent to the stores of all local partitions through the configured {@link Executor}, so with a
+ * concurrent executor the latency of a query follows the slowest partition instead of the sum of all partitions.
+ * By default the partitions are queried one after another on the calling thread.
+ * <p>
+ * Paged queries pin a snapshot of every partition, whose ids are returned with the cursor. Passing them on with the
+ * options of the next page keeps the pages consistent with each other. If a snapshot is no longer pinned, the page
+ * fails with a {@link SnapshotExpiredException} rather than being read from the current state.
+ * <p>
+ * With a {@link SlowQueryLog}, queries over all partitions exceeding its thresholds are recorded with
+ * {@link SlowQueryLog#ALL_PARTITIONS}. These entries only measure latency and record 0 scanned documents, the
+ * documents scanned are recorded by the stores of the partitions.
  *
  * @param <Key> key type
  * @param <Doc> teh document type
@@ -27,23 +50,43 @@ public class CompositeReadOnlyDocumentStore<Key, Doc extends Document> implement
 
     private static final Logger logger = LoggerFactory.getLogger(CompositeReadOnlyDocumentStore.class);
 
+    public static final Executor SAME_THREAD = Runnable::run;
+
     private final StateStoreProvider storeProvider;
     private final QueryableStoreType<ReadOnlyDocumentStore<Key, Doc>> storeType;
     private final String storeName;
+    private final Executor executor;
+    private final SlowQueryLog slowQueryLog;
 
     public CompositeReadOnlyDocumentStore(final StateStoreProvider storeProvider,
                                           final QueryableStoreType<ReadOnlyDocumentStore<Key, Doc>> storeType,
                                           final String storeName) {
+        this(storeProvider, storeType, storeName, SAME_THREAD);
+    }
+
+    public CompositeReadOnlyDocumentStore(final StateStoreProvider storeProvider,
+                                          final QueryableStoreType<ReadOnlyDocumentStore<Key, Doc>> storeType,
+                                          final String storeName,
+                                          final Executor executor) {
+        this(storeProvider, storeType, storeName, executor, null);
+    }
+
+    public CompositeReadOnlyDocumentStore(final StateStoreProvider storeProvider,
+                                          final QueryableStoreType<ReadOnlyDocumentStore<Key, Doc>> storeType,
+                                          final String storeName,
+                                          final Executor executor,
+                                          final SlowQueryLog slowQueryLog) {
         this.storeProvider = storeProvider;
         this.storeType = storeType;
         this.storeName = storeName;
+        this.executor = Objects.requireNonNull(executor);
+        this.slowQueryLog = slowQueryLog;
     }
 
     @Override
     public Doc get(final Key key) {
         Objects.requireNonNull(key);
         final List<ReadOnlyDocumentStore<Key, Doc>> stores = storeProvider.stores(storeName, storeType);
-        // TODO: use the KeyMetadata to resolve the partition directly and optimize the lookup instead of going through each of the partitions
         for (final ReadOnlyDocumentStore<Key, Doc> store : stores) {
             try {
                 final Doc result = store.get(key);
@@ -59,21 +102,30 @@ public class CompositeReadOnlyDocumentStore<Key, Doc extends Document> implement
     }
 
     @Override
-    public CompositeCursor<Doc> find(Filter filter) {
-        Objects.requireNonNull(filter);
-        final List<ReadOnlyDocumentStore<Key, Doc>> stores = storeProvider.stores(storeName, null);
-        Map<Integer, Cursor<Doc>> cursors = new HashMap<>();
+    public Doc get(final Key key, final int partition) {
+        Objects.requireNonNull(key);
+        final List<ReadOnlyDocumentStore<Key, Doc>> stores = storeProvider.stores(storeName, storeType);
         for (final ReadOnlyDocumentStore<Key, Doc> store : stores) {
+            if (store.getPartition() != partition) {
+                continue;
+            }
             try {
-                final Cursor<Doc> result = store.find(filter);
-                if (result != null) {
-                    cursors.put(store.getPartition(), result);
-                }
+                return store.get(key);
             } catch (final InvalidStateStoreException e) {
                 throw new InvalidStateStoreException("State store is not available anymore and may have been migrated to another instance; please re-discover its location from the state metadata.");
             }
         }
-        return CompositeCursor.of(cursors);
+        throw new InvalidStateStorePartitionException(String.format("The specified partition %d for store %s does not exist.", partition, storeName));
+    }
+
+    @Override
+    public CompositeCursor<Doc> find(Filter filter) {
+        Objects.requireNonNull(filter);
+        final long start = System.nanoTime();
+        Map<Integer, Cursor<Doc>> cursors = findInPartitions((store) -> store.find(filter));
+        CompositeCursor<Doc> compositeCursor = closeAfter(cursors, () -> CompositeCursor.of(cursors));
+        recordQuery(filter, null, start, compositeCursor);
+        return compositeCursor;
     }
 
     @Override
@@ -84,23 +136,101 @@ public class CompositeReadOnlyDocumentStore<Key, Doc extends Document> implement
     @Override
     public CompositeCursor<Doc> findWithOptions(Filter filter, CompositeFindOptions compositeFindOptions) {
         Objects.requireNonNull(compositeFindOptions);
-        final List<ReadOnlyDocumentStore<Key, Doc>> stores = storeProvider.stores(storeName, null);
-        Map<Integer, Cursor<Doc>> cursors = new HashMap<>();
-        for (final ReadOnlyDocumentStore<Key, Doc> store : stores) {
-            try {
-                int partition = store.getPartition();
-                CompositeFindOptions findOptions = compositeFindOptions.getFindOptionsForPartition(partition);
-                final Cursor<Doc> result = store.findWithOptions(filter, findOptions);
-                if (result != null) {
-                    cursors.put(store.getPartition(), result);
+        final long start = System.nanoTime();
+        if (compositeFindOptions.getSize() <= 0) {
+            Map<Integer, Cursor<Doc>> cursors = findInPartitions((store) -> store.findWithOptions(filter, compositeFindOptions.getFindOptionsForPartition(store.getPartition())));
+            CompositeCursor<Doc> compositeCursor = closeAfter(cursors, () -> CompositeCursor.of(cursors, compositeFindOptions));
+            recordQuery(filter, compositeFindOptions, start, compositeCursor);
+            logger.debug("Returning composite cursor: {}", compositeCursor);
+            return compositeCursor;
+        }
+
+        // pages are read from the snapshots pinned for the first page, so documents don't shift between pages
+        final Map<Integer, Long> snapshots = new ConcurrentHashMap<>();
+        Map<Integer, Cursor<Doc>> cursors = findInPartitions((store) -> {
+            int partition = store.getPartition();
+            Long requested = compositeFindOptions.getSnapshotForPartition(partition);
+            long snapshot = store.pinSnapshot(requested);
+            if (requested != null && snapshot != requested) {
+                logger.warn("Snapshot {} of store {} for partition {} is no longer pinned", requested, storeName, partition);
+                throw new SnapshotExpiredException(storeName, partition, requested);
+            }
+            snapshots.put(partition, snapshot);
+            return store.findWithOptions(filter, compositeFindOptions.getFindOptionsForPartition(partition), snapshot);
+        });
+        CompositeCursor<Doc> compositeCursor = closeAfter(cursors, () -> CompositeCursor.of(cursors, compositeFindOptions)).withSnapshots(snapshots);
+        recordQuery(filter, compositeFindOptions, start, compositeCursor);
+        logger.debug("Returning composite cursor: {}", compositeCursor);
+        return compositeCursor;
+    }
+
+    @Override
+    public CompositeQueryPlan explain(Filter filter, CompositeFindOptions compositeFindOptions) {
+        Objects.requireNonNull(compositeFindOptions);
+        return new CompositeQueryPlan(findInPartitions((store) -> store.explain(filter, compositeFindOptions.getFindOptionsForPartition(store.getPartition()))));
+    }
+
+    @Override
+    public Map<Integer, List<IndexRecommendation>> recommendIndices() {
+        return findInPartitions(ReadOnlyDocumentStore::recommendIndices);
+    }
+
+    /**
+     * Combines the cursors of the partitions, then closes them, as the composite cursor holds the documents it needs.
+     */
+    private CompositeCursor<Doc> closeAfter(Map<Integer, Cursor<Doc>> cursors, Supplier<CompositeCursor<Doc>> combine) {
+        try {
+            return combine.get();
+        } finally {
+            for (Cursor<Doc> cursor : cursors.values()) {
+                if (cursor instanceof StreamingCursor<Doc> streamingCursor) {
+                    streamingCursor.close();
                 }
-            } catch (final InvalidStateStoreException e) {
+            }
+        }
+    }
+
+    private void recordQuery(Filter filter, FindOptions findOptions, long start, CompositeCursor<Doc> compositeCursor) {
+        if (slowQueryLog != null) {
+            slowQueryLog.record(storeName, SlowQueryLog.ALL_PARTITIONS, SlowQueryLog.fingerprint(filter, findOptions), System.nanoTime() - start, 0, compositeCursor.size());
+        }
+    }
+
+    private <Result> Map<Integer, Result> findInPartitions(Function<ReadOnlyDocumentStore<Key, Doc>, Result> query) {
+        final List<ReadOnlyDocumentStore<Key, Doc>> stores = storeProvider.stores(storeName, null);
+        final Map<Integer, Result> results = new ConcurrentHashMap<>();
+        final CompletableFuture<?>[] queries = stores.stream()
+                .map((store) -> CompletableFuture.runAsync(() -> {
+                    final Result result = query.apply(store);
+                    if (result != null) {
+                        results.put(store.getPartition(), result);
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(queries).join();
+        } catch (final CompletionException e) {
+            // allOf completes once every query is done, so no partition adds a result after the others are closed
+            closeAll(results.values());
+            if (e.getCause() instanceof InvalidStateStoreException) {
                 throw new InvalidStateStoreException("State store is not available anymore and may have been migrated to another instance; please re-discover its location from the state metadata.");
+            } else if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            throw e;
+        }
+        return results;
+    }
 
+    private static void closeAll(Iterable<?> results) {
+        for (Object result : results) {
+            if (result instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (final Exception e) {
+                    logger.warn("Failed to close the result of a partition", e);
+                }
+            }
         }
-        CompositeCursor<Doc> compositeCursor = CompositeCursor.of(cursors, compositeFindOptions);
-        logger.debug("Returning composite cursor: {}", compositeCursor);
-        return compositeCursor;
     }
 }
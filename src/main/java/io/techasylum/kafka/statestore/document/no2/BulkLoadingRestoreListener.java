@@ -0,0 +1,75 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+
+/**
+ * A {@link StateRestoreListener} which puts {@link NitriteDocumentStore}s in bulk-load mode while their changelog is
+ * being restored. The secondary indices of a store are dropped when the restore starts and rebuilt in a single pass
+ * over the collection when it ends, instead of being updated for every restored record.
+ * <p>
+ * Kafka Streams only notifies the global restore listener, so the listener has to be registered on the
+ * {@link org.apache.kafka.streams.KafkaStreams} instance as well as on the builder of every store it should manage:
+ * <pre>{@code
+ * BulkLoadingRestoreListener bulkLoading = new BulkLoadingRestoreListener();
+ * topology.addStateStore(DocumentStores.nitriteStore(...).withBulkLoadingRestore(bulkLoading), "processor");
+ * streams.setGlobalStateRestoreListener(bulkLoading);
+ * }</pre>
+ */
+public class BulkLoadingRestoreListener implements StateRestoreListener {
+
+    private final Map<Map.Entry<String, Integer>, NitriteDocumentStore<?, ?>> stores = new ConcurrentHashMap<>();
+    private final StateRestoreListener delegate;
+
+    public BulkLoadingRestoreListener() {
+        this(null);
+    }
+
+    /**
+     * @param delegate a listener which is notified of all restore events as well, since an application can only
+     *                 register a single global restore listener
+     */
+    public BulkLoadingRestoreListener(StateRestoreListener delegate) {
+        this.delegate = delegate;
+    }
+
+    void register(NitriteDocumentStore<?, ?> store) {
+        stores.put(Map.entry(store.name(), store.getPartition()), store);
+    }
+
+    void unregister(NitriteDocumentStore<?, ?> store) {
+        stores.remove(Map.entry(store.name(), store.getPartition()), store);
+    }
+
+    @Override
+    public void onRestoreStart(TopicPartition topicPartition, String storeName, long startingOffset, long endingOffset) {
+        NitriteDocumentStore<?, ?> store = stores.get(Map.entry(storeName, topicPartition.partition()));
+        if (store != null) {
+            store.beginBulkLoad(endingOffset - startingOffset);
+        }
+        if (delegate != null) {
+            delegate.onRestoreStart(topicPartition, storeName, startingOffset, endingOffset);
+        }
+    }
+
+    @Override
+    public void onBatchRestored(TopicPartition topicPartition, String storeName, long batchEndOffset, long numRestored) {
+        if (delegate != null) {
+            delegate.onBatchRestored(topicPartition, storeName, batchEndOffset, numRestored);
+        }
+    }
+
+    @Override
+    public void onRestoreEnd(TopicPartition topicPartition, String storeName, long totalRestored) {
+        NitriteDocumentStore<?, ?> store = stores.get(Map.entry(storeName, topicPartition.partition()));
+        if (store != null) {
+            store.endBulkLoad();
+        }
+        if (delegate != null) {
+            delegate.onRestoreEnd(topicPartition, storeName, totalRestored);
+        }
+    }
+}
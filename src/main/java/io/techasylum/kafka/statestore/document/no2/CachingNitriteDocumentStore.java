@@ -0,0 +1,212 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.streams.KeyValue;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.IndexOptions;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.internals.PendingDocuments;
+
+import static org.dizitart.no2.Constants.DOC_ID;
+
+/**
+ * A {@link NitriteDocumentStore} which keeps the documents written between two commits in memory, similar to the
+ * record cache Kafka Streams puts in front of its key-value stores.
+ * <p>
+ * Repeated writes to the same key are absorbed by the cache and only reach Nitrite and the changelog once, when the
+ * store is flushed or when the least recently written entry gets evicted to make room for another key. Reads of cached
+ * keys are served from memory, as copies like the documents read from Nitrite. Queries see the cached documents in
+ * place of the stored ones, see {@link PendingDocuments}, so neither reads nor queries write to Nitrite or wait for
+ * the stream thread.
+ */
+public class CachingNitriteDocumentStore<Key, Doc extends Document> extends NitriteDocumentStore<Key, Doc> {
+
+    private final int maxCacheEntries;
+    private final Map<Key, CacheEntry> cache = new ConcurrentHashMap<>();
+    // the keys of the cache in the order they were last written, only used by the stream thread
+    private final Set<Key> writeOrder = new LinkedHashSet<>();
+    private final PendingDocuments pendingDocuments = new PendingDocuments();
+
+    public CachingNitriteDocumentStore(String name, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, String keyFieldName, Function<Document, Doc> documentConverter, Map<String, IndexOptions> indices, List<NitriteCustomizer> customizers, boolean enableLogging, BulkLoadingRestoreListener bulkLoadingRestoreListener, int maxCacheEntries) {
+        super(name, keySerde, valueSerde, keyFieldName, documentConverter, indices, customizers, enableLogging, bulkLoadingRestoreListener);
+        if (maxCacheEntries <= 0) {
+            throw new IllegalArgumentException("maxCacheEntries must be positive");
+        }
+        this.maxCacheEntries = maxCacheEntries;
+    }
+
+// == Store Level Administration ======================================================================================
+
+    @Override
+    public void flush() {
+        if (!isOpen()) return;
+        flushCache();
+        super.flush();
+    }
+
+    @Override
+    public void close() {
+        if (!isOpen()) return;
+        flushCache();
+        super.close();
+    }
+
+// == Operations ======================================================================================================
+
+    @Override
+    public Doc get(Key key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        validateStoreOpen();
+
+        CacheEntry entry = cache.get(key);
+        if (entry != null) {
+            return entry.document == null ? null : copyOf(entry.document);
+        }
+        return super.get(key);
+    }
+
+    @Override
+    public void put(Key key, Doc value) {
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(value, "value cannot be null");
+        validateStoreOpen();
+
+        putInCache(key, value);
+    }
+
+    @Override
+    public synchronized Doc putIfAbsent(Key key, Doc value) {
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(value, "value cannot be null");
+        validateStoreOpen();
+
+        final Doc previous = get(key);
+        if (previous == null) {
+            putInCache(key, value);
+        }
+        return previous;
+    }
+
+    @Override
+    public void putAll(List<KeyValue<Key, Doc>> entries) {
+        Objects.requireNonNull(entries, "entries cannot be null");
+        validateStoreOpen();
+
+        for (KeyValue<Key, Doc> entry : entries) {
+            Objects.requireNonNull(entry.key, "key cannot be null");
+            putInCache(entry.key, entry.value);
+        }
+    }
+
+    @Override
+    public synchronized Doc delete(Key key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        validateStoreOpen();
+
+        final Doc oldValue = get(key);
+        putInCache(key, null);
+        return oldValue;
+    }
+
+    @Override
+    PendingDocuments pendingDocuments() {
+        return pendingDocuments;
+    }
+
+// == Cache ===========================================================================================================
+
+    /**
+     * Caches a write as the document Nitrite will store for it, which merges a written document into the stored one
+     * unless that was deleted in the meantime. New documents get their id up front, so queries can tell the cached
+     * documents from the stored ones.
+     */
+    private synchronized void putInCache(Key key, Doc value) {
+        CacheEntry cached = cache.get(key);
+        Document stored = cached == null ? storedDocument(key) : null;
+        NitriteId nitriteId = cached != null ? cached.nitriteId : stored != null ? stored.getId() : NitriteId.newId();
+
+        CacheEntry entry;
+        if (value == null) {
+            entry = new CacheEntry(nitriteId, null, false);
+            pendingDocuments.delete(nitriteId);
+        } else {
+            Document previous = cached != null ? cached.document : stored;
+            Document document = previous == null ? new Document() : new Document(previous);
+            document.putAll(value);
+            document.put(DOC_ID, nitriteId.getIdValue());
+            entry = new CacheEntry(nitriteId, document, cached != null && (cached.document == null || cached.replace));
+            pendingDocuments.put(nitriteId, document);
+        }
+        cache.put(key, entry);
+        writeOrder.remove(key);
+        writeOrder.add(key);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Key> keys = writeOrder.iterator();
+        while (writeOrder.size() > maxCacheEntries && keys.hasNext()) {
+            Key eldest = keys.next();
+            keys.remove();
+            write(List.of(eldest));
+        }
+    }
+
+    private synchronized void flushCache() {
+        if (writeOrder.isEmpty()) {
+            return;
+        }
+        write(new ArrayList<>(writeOrder));
+        writeOrder.clear();
+    }
+
+    /**
+     * Writes cached entries to Nitrite and to the changelog. They are only dropped from the cache once they are stored,
+     * so reads and queries find them in either place.
+     */
+    private void write(List<Key> keys) {
+        List<KeyValue<Key, Doc>> records = new ArrayList<>();
+        List<KeyValue<Key, Doc>> updates = new ArrayList<>();
+        for (Key key : keys) {
+            CacheEntry cached = cache.get(key);
+            if (cached.document == null || cached.replace) {
+                remove(key);
+            }
+            Doc value = cached.document == null ? null : copyOf(cached.document);
+            if (value != null) {
+                updates.add(KeyValue.pair(key, value));
+            }
+            records.add(KeyValue.pair(key, value));
+        }
+        if (!updates.isEmpty()) {
+            storeAll(updates);
+        }
+
+        if (loggingEnabled()) {
+            for (KeyValue<Key, Doc> record : records) {
+                log(record.key, record.value);
+            }
+        }
+        for (Key key : keys) {
+            pendingDocuments.remove(cache.remove(key).nitriteId);
+        }
+    }
+
+    /**
+     * @param nitriteId the id of the document, which new documents are inserted with
+     * @param document  the document as Nitrite will store it or {@code null} for a pending delete
+     * @param replace   whether the stored document was deleted before, so it has to be removed rather than updated
+     */
+    private record CacheEntry(NitriteId nitriteId, Document document, boolean replace) { }
+}
@@ -0,0 +1,78 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.dizitart.no2.Document;
+
+import static org.dizitart.no2.Constants.DOC_ID;
+import static org.dizitart.no2.Constants.DOC_MODIFIED;
+import static org.dizitart.no2.Constants.DOC_REVISION;
+import static org.dizitart.no2.Constants.DOC_SOURCE;
+
+/**
+ * Patch records hold the fields of a document which changed since the previous changelog record of its key.
+ * <p>
+ * A compacted changelog only keeps the last record of every key, so patches are not logged under the key of the
+ * document itself but under a patch key combining a reserved prefix, the sequence number of the patch since the last
+ * full record and the key of the document. When the next full record of the document is logged, the patch keys up to
+ * then are deleted, which bounds both the size of the changelog and the number of patches replayed per document.
+ */
+final class ChangelogPatches {
+
+    private static final byte[] PATCH_KEY_PREFIX = {0, 0, 'n', 'o', '2', 'p', 'a', 't', 'c', 'h'};
+    private static final Set<String> META_FIELDS = Set.of(DOC_ID, DOC_REVISION, DOC_MODIFIED, DOC_SOURCE);
+
+    private ChangelogPatches() {
+    }
+
+    static byte[] patchKey(byte[] key, int sequence) {
+        return ByteBuffer.allocate(PATCH_KEY_PREFIX.length + Integer.BYTES + key.length)
+                .put(PATCH_KEY_PREFIX)
+                .putInt(sequence)
+                .put(key)
+                .array();
+    }
+
+    static boolean isPatchKey(byte[] key) {
+        if (key == null || key.length < PATCH_KEY_PREFIX.length + Integer.BYTES) {
+            return false;
+        }
+        return Arrays.equals(key, 0, PATCH_KEY_PREFIX.length, PATCH_KEY_PREFIX, 0, PATCH_KEY_PREFIX.length);
+    }
+
+    static int sequence(byte[] patchKey) {
+        return ByteBuffer.wrap(patchKey, PATCH_KEY_PREFIX.length, Integer.BYTES).getInt();
+    }
+
+    static byte[] documentKey(byte[] patchKey) {
+        return Arrays.copyOfRange(patchKey, PATCH_KEY_PREFIX.length + Integer.BYTES, patchKey.length);
+    }
+
+    /**
+     * Collects the top-level fields of the next version of a document whose values differ from the previous version.
+     * Storing a document merges its fields into the stored one, so fields missing from the next version are kept.
+     *
+     * @param previous the stored version of the document
+     * @param next the version being stored
+     * @return the patch or {@code null} if nothing changed
+     */
+    static Document diff(Document previous, Document next) {
+        Document patch = null;
+        for (Map.Entry<String, Object> field : next.entrySet()) {
+            if (META_FIELDS.contains(field.getKey())) {
+                continue;
+            }
+            if (!previous.containsKey(field.getKey()) || !Objects.deepEquals(previous.get(field.getKey()), field.getValue())) {
+                if (patch == null) {
+                    patch = new Document();
+                }
+                patch.put(field.getKey(), field.getValue());
+            }
+        }
+        return patch;
+    }
+}
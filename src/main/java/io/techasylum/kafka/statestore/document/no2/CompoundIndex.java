@@ -0,0 +1,305 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+import org.dizitart.no2.Document;
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.filters.FilterNodes;
+
+import static org.dizitart.no2.Constants.DOC_ID;
+import static org.dizitart.no2.util.DocumentUtils.getFieldValue;
+import static org.dizitart.no2.util.NumberUtils.compare;
+
+/**
+ * An index on several fields of the documents, which Nitrite only supports for single fields. Its entries are ordered
+ * by the value of the first field, then by the value of the second one and so on, so the documents matching equality
+ * predicates on a prefix of the fields and a range on the next field are a single range of entries, found in
+ * {@code O(log n + k)} rather than by intersecting the matches of every predicate or scanning the collection.
+ * <p>
+ * Like the key index of the store, the entries are kept in memory, maintained on every write and rebuilt when the store
+ * is opened. Like Nitrite's indices, they hold the current values of the documents rather than the values of a
+ * snapshot, so the filter is evaluated again against the snapshot for the documents they select, and fields changed
+ * since the snapshot was taken are not looked up.
+ */
+final class CompoundIndex {
+
+    /**
+     * Values ordered around the values of the documents, to bound the ranges of entries and to order the values which
+     * can't be compared after all others.
+     */
+    private enum Bound { LOWEST, UNORDERED, HIGHEST }
+
+    private static final Set<String> RANGE_OPERATORS = Set.of("gt", "gte", "lt", "lte");
+
+    private final List<String> fields;
+    private final NavigableSet<Object[]> entries = new ConcurrentSkipListSet<>(CompoundIndex::compareEntries);
+
+    CompoundIndex(List<String> fields) {
+        if (fields.size() < 2) {
+            throw new IllegalArgumentException("A compound index requires at least two fields");
+        }
+        if (new LinkedHashSet<>(fields).size() != fields.size()) {
+            throw new IllegalArgumentException("The fields of a compound index must be distinct: " + fields);
+        }
+        this.fields = List.copyOf(fields);
+    }
+
+    /**
+     * @param nitriteId the id of the document
+     * @param document  the document
+     * @return the entry of the document, the values of the fields followed by its id
+     */
+    Object[] entry(NitriteId nitriteId, Document document) {
+        Object[] entry = new Object[fields.size() + 1];
+        for (int i = 0; i < fields.size(); i++) {
+            Object value = getFieldValue(document, fields.get(i));
+            entry[i] = value == null || value instanceof Comparable ? value : Bound.UNORDERED;
+        }
+        entry[fields.size()] = nitriteId;
+        return entry;
+    }
+
+    /**
+     * Replaces the entry of a document.
+     *
+     * @param previous the entry of the previous version of the document or {@code null} if it didn't exist
+     * @param current  the entry of the current version of the document or {@code null} if it was removed
+     */
+    void replace(Object[] previous, Object[] current) {
+        if (Arrays.equals(previous, current)) {
+            return;
+        }
+        if (previous != null) {
+            entries.remove(previous);
+        }
+        if (current != null) {
+            entries.add(current);
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private Set<NitriteId> find(List<Object> prefix, Range range) {
+        Object[] from = new Object[fields.size() + 1];
+        Object[] to = new Object[fields.size() + 1];
+        for (int i = 0; i < prefix.size(); i++) {
+            from[i] = prefix.get(i);
+            to[i] = prefix.get(i);
+        }
+
+        int next = prefix.size();
+        Bound fromFill = Bound.LOWEST;
+        Bound toFill = Bound.HIGHEST;
+        if (range != null) {
+            from[next] = range.lower == null ? Bound.LOWEST : range.lower;
+            to[next] = range.upper == null ? Bound.HIGHEST : range.upper;
+            fromFill = range.lowerInclusive ? Bound.LOWEST : Bound.HIGHEST;
+            toFill = range.upperInclusive ? Bound.HIGHEST : Bound.LOWEST;
+            next++;
+        }
+        Arrays.fill(from, next, from.length, fromFill);
+        Arrays.fill(to, next, to.length, toFill);
+        if (compareEntries(from, to) > 0) {
+            return Set.of();
+        }
+
+        Set<NitriteId> nitriteIds = new LinkedHashSet<>();
+        for (Object[] entry : entries.subSet(from, true, to, true)) {
+            nitriteIds.add((NitriteId) entry[fields.size()]);
+        }
+        return nitriteIds;
+    }
+
+    /**
+     * Plans the lookup of the documents which can match a filter in the index covering the most predicates of the
+     * filter. The filter has to be a single predicate or combine predicates with {@code and}, the equality predicates
+     * on a prefix of the fields of the index and the range predicates on the next field are covered.
+     *
+     * @param indices the compound indices of the store
+     * @param filter  the filter
+     * @param changed whether a field changed since the snapshot the filter is evaluated against was taken, the index
+     *                entries of such a field may not select the documents of the snapshot
+     * @return the lookup or {@code null} if no index covers any predicate of the filter
+     */
+    static Lookup lookup(List<CompoundIndex> indices, Filter filter, Predicate<String> changed) {
+        if (indices.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Object> equalities = new HashMap<>();
+        Map<String, Range> ranges = new HashMap<>();
+        collectPredicates(filter, equalities, ranges);
+        if (equalities.isEmpty() && ranges.isEmpty()) {
+            return null;
+        }
+
+        Lookup best = null;
+        for (CompoundIndex index : indices) {
+            List<Object> prefix = new ArrayList<>();
+            while (prefix.size() < index.fields.size() && equalities.containsKey(index.fields.get(prefix.size()))
+                    && !changed.test(index.fields.get(prefix.size()))) {
+                prefix.add(equalities.get(index.fields.get(prefix.size())));
+            }
+            Range range = prefix.size() < index.fields.size() && !changed.test(index.fields.get(prefix.size()))
+                    ? ranges.get(index.fields.get(prefix.size())) : null;
+
+            Lookup lookup = new Lookup(index, prefix, range);
+            if (lookup.predicates() > 0 && (best == null || lookup.predicates() > best.predicates())) {
+                best = lookup;
+            }
+        }
+        return best;
+    }
+
+    private static void collectPredicates(Filter filter, Map<String, Object> equalities, Map<String, Range> ranges) {
+        if (FilterNodes.isAnd(filter)) {
+            FilterNodes.children(filter).forEach((child) -> collectPredicates(child, equalities, ranges));
+            return;
+        }
+
+        String field = FilterNodes.field(filter);
+        Object value = FilterNodes.value(filter);
+        if (field == null || DOC_ID.equals(field) || !(value == null || value instanceof Comparable)) {
+            return;
+        }
+
+        String operator = FilterNodes.operator(filter);
+        if (operator.equals("eq")) {
+            equalities.putIfAbsent(field, value);
+            return;
+        }
+        boolean lower = operator.equals("gt") || operator.equals("gte");
+        boolean upper = operator.equals("lt") || operator.equals("lte");
+        // the patched filters compare the values other than numbers the other way around
+        if (!(lower || upper) || value == null || (FilterNodes.isPatched(filter) && !(value instanceof Number))) {
+            return;
+        }
+        Range range = ranges.computeIfAbsent(field, (key) -> new Range());
+        if (lower && range.lower == null) {
+            range.lower = value;
+            range.lowerInclusive = operator.equals("gte");
+        } else if (upper && range.upper == null) {
+            range.upper = value;
+            range.upperInclusive = operator.equals("lte");
+        }
+    }
+
+    /**
+     * Orders the entries by the values of the fields, then by id. A missing value comes first, followed by the numbers
+     * whatever their type, the other values grouped by type and the values which can't be compared.
+     */
+    private static int compareEntries(Object[] a, Object[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int result = compareValues(a[i], b[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object a, Object b) {
+        int result = Integer.compare(rank(a), rank(b));
+        if (result != 0 || a == null || a instanceof Bound) {
+            return result;
+        }
+        if (a instanceof Number number) {
+            return compare(number, (Number) b);
+        }
+        result = a.getClass().getName().compareTo(b.getClass().getName());
+        return result != 0 ? result : ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static int rank(Object value) {
+        if (value instanceof Bound bound) {
+            return switch (bound) {
+                case LOWEST -> 0;
+                case UNORDERED -> 4;
+                case HIGHEST -> 5;
+            };
+        }
+        return value == null ? 1 : value instanceof Number ? 2 : 3;
+    }
+
+    /**
+     * The bounds of the range predicates on a field.
+     */
+    private static final class Range {
+        private Object lower;
+        private boolean lowerInclusive;
+        private Object upper;
+        private boolean upperInclusive;
+    }
+
+    /**
+     * A lookup of the documents matching the equality predicates on the first fields of an index and the range
+     * predicates on the next field, if any.
+     */
+    static final class Lookup {
+
+        private final CompoundIndex index;
+        private final List<Object> prefix;
+        private final Range range;
+
+        private Lookup(CompoundIndex index, List<Object> prefix, Range range) {
+            this.index = index;
+            this.prefix = prefix;
+            this.range = range;
+        }
+
+        /**
+         * @return the number of predicates covered by the lookup
+         */
+        int predicates() {
+            return prefix.size() + (range == null ? 0 : 1);
+        }
+
+        /**
+         * @return the fields of the index covered by the lookup, separated by commas
+         */
+        String fields() {
+            return String.join(",", index.fields.subList(0, predicates()));
+        }
+
+        /**
+         * @param filter a filter which doesn't combine other filters
+         * @return whether the filter is one of the predicates covered by the lookup
+         */
+        boolean covers(Filter filter) {
+            int position = index.fields.indexOf(FilterNodes.field(filter));
+            if (position < 0 || position >= predicates()) {
+                return false;
+            }
+            String operator = FilterNodes.operator(filter);
+            return position < prefix.size() ? operator.equals("eq") : RANGE_OPERATORS.contains(operator);
+        }
+
+        /**
+         * @param changed whether a field changed since the snapshot the lookup is for was taken
+         * @return whether any field covered by the lookup changed, so the documents it selected can't be trusted
+         */
+        boolean changed(Predicate<String> changed) {
+            return index.fields.subList(0, predicates()).stream().anyMatch(changed);
+        }
+
+        /**
+         * @return the ids of the documents which can match the covered predicates, in the order of the index
+         */
+        Set<NitriteId> find() {
+            return index.find(prefix, range);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dizitart.no2.Document;
+
+/**
+ * Converters turning the documents read from Nitrite into the document type of a store.
+ * <p>
+ * The documents handed to a converter are already copies of the stored documents, but the values they hold, including
+ * nested documents, are still shared with the stored instances.
+ */
+public final class DocumentConverters {
+
+    private DocumentConverters() {
+    }
+
+    /**
+     * Creates the converter for the document type of a store. Stores of plain {@link Document}s copy the documents
+     * rather than converting them, see {@link #deepCopy()}, other types are converted by the object mapper. Either way
+     * the returned documents share no values with the stored ones, stores which don't change the documents they read
+     * can opt into {@link #identity()} instead.
+     *
+     * @param docClass the document type of the store
+     * @param objectMapper the object mapper to convert the documents with
+     * @return the converter
+     */
+    @SuppressWarnings("unchecked")
+    public static <Doc extends Document> Function<Document, Doc> converter(Class<Doc> docClass, ObjectMapper objectMapper) {
+        if (docClass == Document.class) {
+            return (Function<Document, Doc>) deepCopy();
+        }
+        return (document) -> objectMapper.convertValue(document, docClass);
+    }
+
+    /**
+     * Returns the documents as they are read from Nitrite. Changing nested values of such a document changes the
+     * stored document as well, without updating its indices or its changelog, so this is only meant for stores whose
+     * readers never change the documents they read.
+     *
+     * @return the converter
+     * @see #deepCopy()
+     */
+    public static Function<Document, Document> identity() {
+        return (document) -> document;
+    }
+
+    /**
+     * Copies the nested documents, maps and collections of the documents read from Nitrite, so they can be changed
+     * freely without affecting the stored documents. This is much cheaper than a round trip through an object mapper.
+     *
+     * @return the converter
+     */
+    public static Function<Document, Document> deepCopy() {
+        return DocumentConverters::copyDocument;
+    }
+
+    private static Document copyDocument(Document document) {
+        Document copy = new Document();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Document) {
+            return copyDocument((Document) value);
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof Set) {
+            Set<Object> copy = new LinkedHashSet<>();
+            for (Object element : (Set<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        } else if (value instanceof Object[]) {
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = copyValue(copy[i]);
+            }
+            return copy;
+        }
+        return value;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
 
+import io.techasylum.kafka.statestore.document.StreamingCursor;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.Lookup;
 import org.dizitart.no2.NitriteId;
@@ -16,16 +17,21 @@ import org.jetbrains.annotations.NotNull;
 
 import static org.dizitart.no2.exceptions.ErrorMessage.OBJ_REMOVE_ON_OBJECT_ITERATOR_NOT_SUPPORTED;
 
-final class DocumentCursor<Doc extends Document> implements Cursor<Doc> {
+final class DocumentCursor<Doc extends Document> implements StreamingCursor<Doc> {
 
-	private final org.dizitart.no2.Cursor documentCursor;
+	private final ResultSetCursor documentCursor;
 	private final Function<Document, Doc> converter;
 
-	DocumentCursor(org.dizitart.no2.Cursor documentCursor, Function<Document, Doc> converter) {
+	DocumentCursor(ResultSetCursor documentCursor, Function<Document, Doc> converter) {
 		this.documentCursor = documentCursor;
 		this.converter = converter;
 	}
 
+	@Override
+	public void close() {
+		documentCursor.close();
+	}
+
 	@Override
 	public <P> RecordIterable<P> project(Class<P> projectionType) {
 		throw new UnsupportedOperationException("Projections not yet supported");
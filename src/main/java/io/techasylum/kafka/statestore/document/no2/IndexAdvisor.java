@@ -0,0 +1,122 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import io.techasylum.kafka.statestore.document.IndexRecommendation;
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.filters.FilterNodes;
+
+import static org.dizitart.no2.Constants.DOC_ID;
+import static org.dizitart.no2.util.StringUtils.isNullOrEmpty;
+
+/**
+ * Records which fields the queries of a store filter and sort on, and how many documents the predicates on fields
+ * without an index scanned. Nitrite evaluates such a predicate by reading the documents it is applied to, whatever the
+ * other predicates of the filter select, so the documents read to evaluate a filter count towards every one of them.
+ * <p>
+ * Only the operators Nitrite can answer from a non-unique index count towards the cost of a field. Sorting always reads
+ * the matched documents, whether the sort field is indexed or not, so sort fields are reported but not recommended
+ * for their sorts alone.
+ */
+final class IndexAdvisor {
+
+    private static final Set<String> EQUALITY_OPERATORS = Set.of("eq", "in", "notIn");
+    private static final Set<String> RANGE_OPERATORS = Set.of("gt", "gte", "lt", "lte");
+
+    private final long scanThreshold;
+    private final boolean createIndices;
+    private final Map<String, FieldUsage> usage = new ConcurrentHashMap<>();
+
+    /**
+     * @param scanThreshold the number of documents the predicates on a field have to scan to recommend indexing it
+     * @param createIndices whether to create the recommended indices
+     */
+    IndexAdvisor(long scanThreshold, boolean createIndices) {
+        if (scanThreshold <= 0) {
+            throw new IllegalArgumentException("scanThreshold must be positive");
+        }
+        this.scanThreshold = scanThreshold;
+        this.createIndices = createIndices;
+    }
+
+    /**
+     * Records an executed query.
+     *
+     * @param filter    the filter of the query or {@code null}
+     * @param options   the options of the query or {@code null}
+     * @param scanned   the number of documents read to evaluate the filter
+     * @param indexed   whether a field can be looked up in an index
+     * @return the fields to index now, if indices are created automatically
+     */
+    List<String> record(Filter filter, FindOptions options, long scanned, Predicate<String> indexed) {
+        List<String> toIndex = new ArrayList<>();
+        if (filter != null) {
+            recordPredicates(filter, scanned, indexed, toIndex);
+        }
+        if (options != null && !isNullOrEmpty(options.getField())) {
+            usage(options.getField()).sorts.increment();
+        }
+        return toIndex;
+    }
+
+    private void recordPredicates(Filter filter, long scanned, Predicate<String> indexed, List<String> toIndex) {
+        List<Filter> children = FilterNodes.children(filter);
+        if (!children.isEmpty()) {
+            children.forEach((child) -> recordPredicates(child, scanned, indexed, toIndex));
+            return;
+        }
+
+        String field = FilterNodes.field(filter);
+        String operator = FilterNodes.operator(filter);
+        boolean equality = EQUALITY_OPERATORS.contains(operator);
+        if (field == null || DOC_ID.equals(field) || !(equality || RANGE_OPERATORS.contains(operator))) {
+            return;
+        }
+
+        FieldUsage fieldUsage = usage(field);
+        (equality ? fieldUsage.equality : fieldUsage.range).increment();
+        if (!indexed.test(field)) {
+            fieldUsage.scanned.add(scanned);
+            if (createIndices && fieldUsage.scanned.sum() >= scanThreshold && fieldUsage.created.compareAndSet(false, true)) {
+                toIndex.add(field);
+            }
+        }
+    }
+
+    private FieldUsage usage(String field) {
+        return usage.computeIfAbsent(field, (key) -> new FieldUsage());
+    }
+
+    /**
+     * @return the fields whose predicates scanned at least as many documents as the threshold, the most scanned first
+     */
+    List<IndexRecommendation> recommendations() {
+        List<IndexRecommendation> recommendations = new ArrayList<>();
+        usage.forEach((field, fieldUsage) -> {
+            long scanned = fieldUsage.scanned.sum();
+            if (scanned >= scanThreshold) {
+                recommendations.add(new IndexRecommendation(field, fieldUsage.equality.sum(), fieldUsage.range.sum(),
+                        fieldUsage.sorts.sum(), scanned, fieldUsage.created.get()));
+            }
+        });
+        recommendations.sort(Comparator.comparingLong(IndexRecommendation::scanned).reversed());
+        return recommendations;
+    }
+
+    private static final class FieldUsage {
+        private final LongAdder equality = new LongAdder();
+        private final LongAdder range = new LongAdder();
+        private final LongAdder sorts = new LongAdder();
+        private final LongAdder scanned = new LongAdder();
+        private final AtomicBoolean created = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,224 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.Collection;
+import java.util.List;
+
+import io.techasylum.kafka.statestore.document.IndexRecommendation;
+import io.techasylum.kafka.statestore.document.QueryPlan;
+import io.techasylum.kafka.statestore.document.StreamingCursor;
+import io.techasylum.kafka.statestore.document.WritableDocumentStore;
+import org.apache.commons.lang3.NotImplementedException;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.processor.StateStoreContext;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.Index;
+import org.dizitart.no2.IndexOptions;
+
+/**
+ * Wraps a {@link NitriteDocumentStore} to record the latency and rate of its operations with sensors registered under
+ * the metrics of the Kafka Streams application, the way Kafka Streams meters its built-in stores. The wrapped store
+ * reports the changelog records it restores, the entries its queries read and the documents they return, as well as
+ * the size of its file and the hit ratio of its page cache.
+ * <p>
+ * The metrics are registered in the {@code stream-state-metrics} group, tagged with {@code nitrite-state-id} set to
+ * the name of the store. Most of them are only recorded at the {@code DEBUG} recording level, see
+ * {@link NitriteStoreMetrics}.
+ */
+public class MeteredNitriteDocumentStore<Key, Doc extends Document> implements WritableDocumentStore<Key, Doc> {
+
+    private final NitriteDocumentStore<Key, Doc> inner;
+    private NitriteStoreMetrics metrics;
+
+    public MeteredNitriteDocumentStore(NitriteDocumentStore<Key, Doc> inner) {
+        this.inner = inner;
+    }
+
+    public NitriteDocumentStore<Key, Doc> inner() {
+        return inner;
+    }
+
+// == Store Level Administration ======================================================================================
+
+    @Override
+    public String name() {
+        return inner.name();
+    }
+
+    @Override
+    public void init(ProcessorContext context, StateStore root) {
+        throw new NotImplementedException("deprecated.");
+    }
+
+    @Override
+    public void init(StateStoreContext context, StateStore root) {
+        metrics = new NitriteStoreMetrics(context, inner);
+        inner.meterWith(metrics);
+        try {
+            inner.init(context, root);
+        } catch (RuntimeException e) {
+            closeMetrics();
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (metrics == null) {
+            inner.flush();
+            return;
+        }
+        metrics.measure(metrics.flushSensor, inner::flush);
+    }
+
+    @Override
+    public void close() {
+        try {
+            inner.close();
+        } finally {
+            closeMetrics();
+        }
+    }
+
+    private void closeMetrics() {
+        if (metrics != null) {
+            inner.meterWith(null);
+            metrics.remove();
+            metrics = null;
+        }
+    }
+
+    @Override
+    public boolean persistent() {
+        return inner.persistent();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return inner.isOpen();
+    }
+
+// == Operations ======================================================================================================
+
+    @Override
+    public Doc get(Key key) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.get(key) : metrics.measure(metrics.getSensor, () -> inner.get(key));
+    }
+
+    @Override
+    public StreamingCursor<Doc> find(Filter filter) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.find(filter) : metrics.measure(metrics.findSensor, () -> inner.find(filter));
+    }
+
+    @Override
+    public StreamingCursor<Doc> findWithOptions(FindOptions options) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.findWithOptions(options) : metrics.measure(metrics.findSensor, () -> inner.findWithOptions(options));
+    }
+
+    @Override
+    public StreamingCursor<Doc> findWithOptions(Filter filter, FindOptions options) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.findWithOptions(filter, options) : metrics.measure(metrics.findSensor, () -> inner.findWithOptions(filter, options));
+    }
+
+    @Override
+    public StreamingCursor<Doc> findWithOptions(Filter filter, FindOptions options, long snapshot) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.findWithOptions(filter, options, snapshot) : metrics.measure(metrics.findSensor, () -> inner.findWithOptions(filter, options, snapshot));
+    }
+
+    @Override
+    public long pinSnapshot(Long snapshot) {
+        return inner.pinSnapshot(snapshot);
+    }
+
+    @Override
+    public QueryPlan explain(Filter filter, FindOptions options) {
+        return inner.explain(filter, options);
+    }
+
+    @Override
+    public List<IndexRecommendation> recommendIndices() {
+        return inner.recommendIndices();
+    }
+
+    @Override
+    public void put(Key key, Doc value) {
+        NitriteStoreMetrics metrics = this.metrics;
+        if (metrics == null) {
+            inner.put(key, value);
+            return;
+        }
+        metrics.measure(metrics.putSensor, () -> inner.put(key, value));
+    }
+
+    @Override
+    public Doc putIfAbsent(Key key, Doc value) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.putIfAbsent(key, value) : metrics.measure(metrics.putIfAbsentSensor, () -> inner.putIfAbsent(key, value));
+    }
+
+    @Override
+    public void putAll(List<KeyValue<Key, Doc>> entries) {
+        NitriteStoreMetrics metrics = this.metrics;
+        if (metrics == null) {
+            inner.putAll(entries);
+            return;
+        }
+        metrics.measure(metrics.putAllSensor, () -> inner.putAll(entries));
+    }
+
+    @Override
+    public Doc delete(Key key) {
+        NitriteStoreMetrics metrics = this.metrics;
+        return metrics == null ? inner.delete(key) : metrics.measure(metrics.deleteSensor, () -> inner.delete(key));
+    }
+
+    @Override
+    public int getPartition() {
+        return inner.getPartition();
+    }
+
+// == Indexes =========================================================================================================
+
+    @Override
+    public void createIndex(String field, IndexOptions indexOptions) {
+        inner.createIndex(field, indexOptions);
+    }
+
+    @Override
+    public void rebuildIndex(String field, boolean async) {
+        inner.rebuildIndex(field, async);
+    }
+
+    @Override
+    public Collection<Index> listIndices() {
+        return inner.listIndices();
+    }
+
+    @Override
+    public boolean hasIndex(String field) {
+        return inner.hasIndex(field);
+    }
+
+    @Override
+    public boolean isIndexing(String field) {
+        return inner.isIndexing(field);
+    }
+
+    @Override
+    public void dropIndex(String field) {
+        inner.dropIndex(field);
+    }
+
+    @Override
+    public void dropAllIndices() {
+        inner.dropAllIndices();
+    }
+}
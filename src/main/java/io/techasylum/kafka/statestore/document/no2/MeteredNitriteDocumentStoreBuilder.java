@@ -0,0 +1,62 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.Map;
+
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.dizitart.no2.Document;
+
+/**
+ * Builds the stores of a {@link NitriteDocumentStoreBuilder} wrapped in a {@link MeteredNitriteDocumentStore}.
+ */
+public class MeteredNitriteDocumentStoreBuilder<Key, Doc extends Document> implements StoreBuilder<MeteredNitriteDocumentStore<Key, Doc>> {
+
+    private final NitriteDocumentStoreBuilder<Key, Doc> builder;
+
+    MeteredNitriteDocumentStoreBuilder(NitriteDocumentStoreBuilder<Key, Doc> builder) {
+        this.builder = builder;
+    }
+
+    @Override
+    public MeteredNitriteDocumentStoreBuilder<Key, Doc> withCachingEnabled() {
+        builder.withCachingEnabled();
+        return this;
+    }
+
+    @Override
+    public MeteredNitriteDocumentStoreBuilder<Key, Doc> withCachingDisabled() {
+        builder.withCachingDisabled();
+        return this;
+    }
+
+    @Override
+    public MeteredNitriteDocumentStoreBuilder<Key, Doc> withLoggingEnabled(Map<String, String> config) {
+        builder.withLoggingEnabled(config);
+        return this;
+    }
+
+    @Override
+    public MeteredNitriteDocumentStoreBuilder<Key, Doc> withLoggingDisabled() {
+        builder.withLoggingDisabled();
+        return this;
+    }
+
+    @Override
+    public MeteredNitriteDocumentStore<Key, Doc> build() {
+        return new MeteredNitriteDocumentStore<>(builder.build());
+    }
+
+    @Override
+    public Map<String, String> logConfig() {
+        return builder.logConfig();
+    }
+
+    @Override
+    public boolean loggingEnabled() {
+        return builder.loggingEnabled();
+    }
+
+    @Override
+    public String name() {
+        return builder.name();
+    }
+}
@@ -3,25 +3,44 @@ package io.techasylum.kafka.statestore.document.no2;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
+import io.techasylum.kafka.statestore.document.IndexRecommendation;
+import io.techasylum.kafka.statestore.document.QueryPlan;
+import io.techasylum.kafka.statestore.document.SlowQueryLog;
+import io.techasylum.kafka.statestore.document.SnapshotExpiredException;
+import io.techasylum.kafka.statestore.document.StreamingCursor;
 import io.techasylum.kafka.statestore.document.WritableDocumentStore;
 import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
+import io.techasylum.kafka.statestore.document.serialization.FieldNameDictionary;
+import io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
 import org.apache.kafka.streams.errors.ProcessorStateException;
+import org.apache.kafka.streams.processor.BatchingStateRestoreCallback;
 import org.apache.kafka.streams.processor.ProcessorContext;
-import org.apache.kafka.streams.processor.StateRestoreCallback;
 import org.apache.kafka.streams.processor.StateStore;
 import org.apache.kafka.streams.processor.StateStoreContext;
 import org.apache.kafka.streams.processor.internals.InternalProcessorContext;
@@ -34,24 +53,53 @@ import org.dizitart.no2.Filter;
 import org.dizitart.no2.FindOptions;
 import org.dizitart.no2.Index;
 import org.dizitart.no2.IndexOptions;
+import org.dizitart.no2.IndexType;
 import org.dizitart.no2.Nitrite;
 import org.dizitart.no2.NitriteBuilder;
 import org.dizitart.no2.NitriteCollection;
+import org.dizitart.no2.NitriteId;
 import org.dizitart.no2.exceptions.NitriteException;
 import org.dizitart.no2.filters.Filters;
-import org.dizitart.no2.objects.Cursor;
+import org.dizitart.no2.internals.CollectionInternals;
+import org.dizitart.no2.internals.DocumentSnapshot;
+import org.dizitart.no2.internals.FieldChanges;
+import org.dizitart.no2.internals.PendingDocuments;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
 import org.slf4j.Logger;
 
 import static org.apache.kafka.streams.kstream.internals.WrappingNullableUtils.prepareKeySerde;
 import static org.apache.kafka.streams.kstream.internals.WrappingNullableUtils.prepareValueSerde;
+import static io.techasylum.kafka.statestore.document.no2.SortComparators.sortValue;
+import static io.techasylum.kafka.statestore.document.no2.SortComparators.sortValueComparator;
 import static org.apache.kafka.streams.processor.internals.ProcessorContextUtils.asInternalProcessorContext;
+import static org.dizitart.no2.Constants.DOC_ID;
+import static org.dizitart.no2.Constants.DOC_MODIFIED;
+import static org.dizitart.no2.Constants.DOC_REVISION;
 import static org.dizitart.no2.UpdateOptions.updateOptions;
+import static org.dizitart.no2.util.DocumentUtils.getFieldValue;
+import static org.dizitart.no2.util.StringUtils.isNullOrEmpty;
+import static org.dizitart.no2.util.ValidationUtils.validateLimit;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class NitriteDocumentStore<Key, Doc extends Document> implements WritableDocumentStore<Key, Doc> {
 
     private static final Logger logger = getLogger(NitriteDocumentStore.class);
 
+    /**
+     * The number of new documents from which a batch which inserts at least as many documents as the collection holds
+     * suspends the non-unique indices and rebuilds them afterwards, rather than maintaining them document by document.
+     */
+    static final int BULK_INSERT_THRESHOLD = 1000;
+
+    private static final Object[][] NO_COMPOUND_ENTRIES = new Object[0][];
+
+    /**
+     * The entry of the key index state map telling whether the key index stored in the file agrees with the stored
+     * documents, see {@link #keyIndexChanging()}.
+     */
+    private static final String KEY_INDEX_COMMITTED = "committed";
+
     private int partition;
     private final String name;
     private final Serde<Key> keySerde;
@@ -60,16 +108,93 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
     private final Function<Document, Doc> documentConverter;
     private final Map<String, IndexOptions> indices;
     private final List<NitriteCustomizer> customizers;
+    private final BulkLoadingRestoreListener bulkLoadingRestoreListener;
+    private final int patchSnapshotInterval;
+    private final boolean coalesceChangelog;
+
+    /**
+     * Maps the value of the key field onto the {@link NitriteId} of the document holding it, so point lookups, upserts
+     * and deletes never need to scan the collection, whether or not an index was defined on the key field. It is kept
+     * in the MVStore holding the collection, so reopening the store doesn't read the documents to rebuild it.
+     */
+    private MVMap<Object, NitriteId> keyIndex;
+    private MVMap<String, Boolean> keyIndexState;
+    private boolean keyIndexCommitted;
+
+    /**
+     * The indices on several fields, which are maintained by the store itself, see {@link CompoundIndex}.
+     */
+    private final List<CompoundIndex> compoundIndices = new ArrayList<>();
 
     private boolean enableLogging;
 
+    /**
+     * The indices dropped while the store restores in bulk, along with the options to create them again with. Every
+     * dropped index is also recorded in the file until it is created again, so a crash in between doesn't lose it.
+     */
+    private Map<String, IndexOptions> suspendedIndices = Map.of();
+    private MVMap<String, String> droppedIndices;
+
+    /**
+     * The field names of the documents, if the value serde encodes them through a dictionary, along with the number of
+     * names this instance already logged.
+     */
+    private FieldNameDictionary fieldNames;
+    private int loggedFieldNames;
+
+    /**
+     * The number of patch records logged for a key since its last full record, if known. Only used by the stream
+     * thread, when logging changes or restoring them.
+     */
+    private final Map<Key, Integer> patchesSinceSnapshot = new HashMap<>();
+    private DocumentSerde<Doc> changelogSerde;
+
+    /**
+     * The keys changed since the last flush along with the timestamp of their last change, if the changelog records
+     * are coalesced. Only used by the stream thread.
+     */
+    private final Map<Key, Long> unloggedChanges = new LinkedHashMap<>();
+
     private Nitrite db;
     private NitriteCollection collection;
+    private CollectionInternals collectionInternals;
+    private final PinnedSnapshots pinnedSnapshots = new PinnedSnapshots();
     private StateSerdes<Key, Doc> serdes;
+    private NitriteStoreMetrics metrics;
+    private SlowQueryLog slowQueryLog;
+    private IndexAdvisor indexAdvisor;
+
+    /**
+     * The fields the {@link IndexAdvisor} asked to index, which are indexed on the next flush.
+     */
+    private final Queue<String> advisedIndices = new ConcurrentLinkedQueue<>();
 
     InternalProcessorContext context;
 
     public NitriteDocumentStore(String name, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, String keyFieldName, Function<Document, Doc> documentConverter, Map<String, IndexOptions> indices, List<NitriteCustomizer> customizers, boolean enableLogging) {
+        this(name, keySerde, valueSerde, keyFieldName, documentConverter, indices, customizers, enableLogging, null);
+    }
+
+    public NitriteDocumentStore(String name, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, String keyFieldName, Function<Document, Doc> documentConverter, Map<String, IndexOptions> indices, List<NitriteCustomizer> customizers, boolean enableLogging, BulkLoadingRestoreListener bulkLoadingRestoreListener) {
+        this(name, keySerde, valueSerde, keyFieldName, documentConverter, indices, customizers, enableLogging, bulkLoadingRestoreListener, 0, false);
+    }
+
+    /**
+     * @param patchSnapshotInterval the number of patch records to log for a document before logging it in full again,
+     *                              or {@code 0} to always log documents in full
+     * @param coalesceChangelog     whether to log only the latest version of every document changed between two
+     *                              flushes, when the store is flushed, rather than every change as it happens
+     */
+    public NitriteDocumentStore(String name, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, String keyFieldName, Function<Document, Doc> documentConverter, Map<String, IndexOptions> indices, List<NitriteCustomizer> customizers, boolean enableLogging, BulkLoadingRestoreListener bulkLoadingRestoreListener, int patchSnapshotInterval, boolean coalesceChangelog) {
+        if (patchSnapshotInterval < 0) {
+            throw new IllegalArgumentException("patchSnapshotInterval can't be negative");
+        }
+        if (patchSnapshotInterval > 0 && valueSerde.documentDeserializer() == null) {
+            throw new IllegalArgumentException("Patch records require a value serde which can read plain documents");
+        }
+        if (patchSnapshotInterval > 0 && coalesceChangelog) {
+            throw new IllegalArgumentException("Patch records can't be combined with coalescing the changelog");
+        }
         this.name = name;
         this.keySerde = keySerde;
         this.valueSerde = valueSerde;
@@ -78,6 +203,9 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         this.indices = indices;
         this.customizers = customizers;
         this.enableLogging = enableLogging;
+        this.bulkLoadingRestoreListener = bulkLoadingRestoreListener;
+        this.patchSnapshotInterval = patchSnapshotInterval;
+        this.coalesceChangelog = coalesceChangelog;
     }
 
 // == Store Properties ================================================================================================
@@ -87,9 +215,19 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         return name;
     }
 
+    /**
+     * The documents are kept in an MVStore file in the state directory, which {@link #flush()} commits before Kafka
+     * Streams checkpoints the changelog offset. A restart therefore reopens the file and only replays the changelog
+     * records past the checkpoint, the field names and key index are kept in the file as well. Kafka Streams wipes the
+     * state directory whenever the file can't be trusted, like after a crash with exactly-once processing.
+     * <p>
+     * Opening the store doesn't read the documents, unless the key index has to be rebuilt because the store wasn't
+     * flushed after its last writes, or the store defines compound indices, which are only kept in memory and so are
+     * rebuilt from all documents whenever the store is opened.
+     */
     @Override
     public boolean persistent() {
-        return false;
+        return true;
     }
 
     @Override
@@ -109,9 +247,13 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         this.context = asInternalProcessorContext(context);
         partition = context.taskId().partition();
 
-        initStoreSerde(context);
+        changelogSerde = initFieldNames(context.stateDir());
+        patchesSinceSnapshot.clear();
+        unloggedChanges.clear();
+        initStoreSerde(context, changelogSerde);
 
         openDB(context.stateDir());
+        createDroppedIndices();
 
         List<String> existingIndices = collection.listIndices().stream().map(Index::getField).toList();
         Set<String> definedIndices = new HashSet<>(indices.keySet());
@@ -126,9 +268,12 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
                 .forEach((entry) -> createIndex(entry.getKey(), entry.getValue()));
 
         context.register(root, new NitriteRestoreCallback<>(this));
+        if (bulkLoadingRestoreListener != null) {
+            bulkLoadingRestoreListener.register(this);
+        }
     }
 
-    private void initStoreSerde(final StateStoreContext context) {
+    private void initStoreSerde(final StateStoreContext context, final Serde<Doc> valueSerde) {
         final String storeName = name();
         final String changelogTopic = ProcessorContextUtils.changelogFor(context, storeName);
         serdes = new StateSerdes<>(
@@ -140,20 +285,99 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         );
     }
 
+    /**
+     * Sets up the dictionary of the field names if the value serde encodes them through one.
+     *
+     * @return the value serde to use for the changelog
+     */
+    private DocumentSerde<Doc> initFieldNames(final File stateDir) {
+        if (!(valueSerde instanceof FieldNameDictionarySerde<Doc> dictionarySerde)) {
+            fieldNames = null;
+            return valueSerde;
+        }
+
+        fieldNames = dictionarySerde.newDictionary();
+        try {
+            fieldNames.load(fieldNamesFile(stateDir));
+        } catch (final IOException fatal) {
+            throw new ProcessorStateException("Error loading field names of store " + name, fatal);
+        }
+        loggedFieldNames = 0;
+        return dictionarySerde.withDictionary(fieldNames);
+    }
+
+    private Path fieldNamesFile(final File stateDir) {
+        return new File(stateDir, name + ".field-names").toPath();
+    }
+
     @Override
     public void flush() {
         if (!isOpen()) return;
+        if (!unloggedChanges.isEmpty()) {
+            logUnloggedChanges();
+        }
+        createAdvisedIndices();
+        commitKeyIndex();
         this.db.commit();
+        if (fieldNames != null) {
+            try {
+                fieldNames.save(fieldNamesFile(context.stateDir()));
+            } catch (final IOException fatal) {
+                throw new ProcessorStateException("Error saving field names of store " + name, fatal);
+            }
+        }
     }
 
     @Override
     public void close() {
         if (!isOpen()) return;
+        if (bulkLoadingRestoreListener != null) {
+            bulkLoadingRestoreListener.unregister(this);
+        }
+        this.pinnedSnapshots.clear();
+        commitKeyIndex();
         this.db.close();
         this.db = null;
     }
 
-    private void validateStoreOpen() {
+    /**
+     * Records the restored changelog records and the entries read by queries with the given metrics, see
+     * {@link MeteredNitriteDocumentStore}.
+     */
+    void meterWith(NitriteStoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Logs the queries exceeding the thresholds of the given log, see {@link SlowQueryLog}.
+     */
+    void logSlowQueriesTo(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Records the fields the queries filter and sort on with the given advisor, see {@link IndexAdvisor}.
+     */
+    void adviseIndicesWith(IndexAdvisor indexAdvisor) {
+        this.indexAdvisor = indexAdvisor;
+    }
+
+    /**
+     * Adds an index on several fields, which has to be done before the store is initialized, see {@link CompoundIndex}.
+     */
+    void addCompoundIndex(CompoundIndex compoundIndex) {
+        this.compoundIndices.add(compoundIndex);
+    }
+
+    /**
+     * @return the MVStore holding the collection or {@code null} if the store is closed
+     */
+    MVStore mvStore() {
+        CollectionInternals internals = this.collectionInternals;
+        return isOpen() && internals != null ? internals.store() : null;
+    }
+
+    void validateStoreOpen() {
         if (!isOpen()) {
             throw new InvalidStateStoreException("Store " + name + " is currently closed");
         }
@@ -178,9 +402,64 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         try {
             this.db = builder.openOrCreate();
             this.collection = this.db.getCollection(name);
+            this.collectionInternals = new CollectionInternals(this.collection);
+            this.pinnedSnapshots.clear();
         } catch (NitriteException ne) {
             throw new ProcessorStateException("Error opening store " + name + " at location " + dbDir, ne);
         }
+
+        loadKeyIndex();
+    }
+
+    /**
+     * Opens the key index kept in the file, rebuilding it from the documents if it may not agree with them, along with
+     * the compound indices.
+     */
+    private void loadKeyIndex() {
+        MVStore store = this.collectionInternals.store();
+        keyIndex = store.openMap(name + "$key-index");
+        keyIndexState = store.openMap(name + "$key-index-state");
+        droppedIndices = store.openMap(name + "$dropped-indices");
+        keyIndexCommitted = Boolean.TRUE.equals(keyIndexState.get(KEY_INDEX_COMMITTED));
+        compoundIndices.forEach(CompoundIndex::clear);
+        if (keyIndexCommitted && compoundIndices.isEmpty()) {
+            return;
+        }
+
+        boolean rebuild = !keyIndexCommitted;
+        if (rebuild) {
+            logger.info("Rebuilding the key index of store {} for partition {}, it wasn't committed with the documents", name, partition);
+            keyIndexChanging();
+            keyIndex.clear();
+        }
+        for (Document document : collection.find()) {
+            Object key = getFieldValue(document, keyFieldName);
+            if (rebuild && key != null && keyIndex.put(key, document.getId()) != null) {
+                throw new ProcessorStateException(String.format("Multiple results for key %s!", key));
+            }
+            for (CompoundIndex compoundIndex : compoundIndices) {
+                compoundIndex.replace(null, compoundIndex.entry(document.getId(), document));
+            }
+        }
+    }
+
+    /**
+     * Marks the key index stored in the file as not agreeing with the stored documents, before a write adds or removes
+     * documents. MVStore commits in the background, so the file may hold a document without its key or the other way
+     * around, until the store is flushed.
+     */
+    private void keyIndexChanging() {
+        if (keyIndexCommitted) {
+            keyIndexState.put(KEY_INDEX_COMMITTED, false);
+            keyIndexCommitted = false;
+        }
+    }
+
+    private void commitKeyIndex() {
+        if (!keyIndexCommitted) {
+            keyIndexState.put(KEY_INDEX_COMMITTED, true);
+            keyIndexCommitted = true;
+        }
     }
 
 // == Operations ======================================================================================================
@@ -190,40 +469,242 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         Objects.requireNonNull(key, "key cannot be null");
         validateStoreOpen();
 
-        Cursor<Doc> items = convertCursor(this.collection.find(Filters.eq(keyFieldName, key)));
+        return this.lookup(key);
+    }
 
-        int cnt = items.totalCount();
-        if (cnt == 0) {
-            return null;
-        } else if (cnt == 1) {
-            return items.firstOrDefault();
-        } else {
-            throw new ProcessorStateException(String.format("Multiple results for key %s!", key));
+    /**
+     * Queries are evaluated against a {@link DocumentSnapshot} of the collection, rather than through Nitrite, which
+     * holds its read lock while evaluating the filter and so makes the stream thread wait for long running scans of
+     * interactive queries. The returned cursor resolves its documents against the same snapshot, so it is not affected
+     * by writes made after the query either, and holds the snapshot until it is closed.
+     */
+    @Override
+    public StreamingCursor<Doc> find(Filter filter) {
+        Objects.requireNonNull(filter, "filter cannot be null");
+        validateStoreOpen();
+
+        long start = System.nanoTime();
+        DocumentSnapshot snapshot = snapshot();
+        try {
+            LongAdder reads = new LongAdder();
+            Set<NitriteId> matches = search(snapshot, filter, reads);
+            recordQuery(filter, null, start, reads.sum(), reads, matches.size());
+            return convertCursor(new ResultSetCursor(matches, snapshot, false, matches.size()));
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
         }
     }
 
     @Override
-    public Cursor<Doc> find(Filter filter) {
-        Objects.requireNonNull(filter, "filter cannot be null");
+    public StreamingCursor<Doc> findWithOptions(FindOptions findOptions) {
+        Objects.requireNonNull(findOptions, "findOptions cannot be null");
         validateStoreOpen();
 
-        return convertCursor(this.collection.find(filter));
+        long start = System.nanoTime();
+        return convertCursor(findInSnapshot(snapshot(), null, findOptions, start));
     }
 
     @Override
-    public Cursor<Doc> findWithOptions(FindOptions findOptions) {
+    public StreamingCursor<Doc> findWithOptions(Filter filter, FindOptions findOptions) {
         Objects.requireNonNull(findOptions, "findOptions cannot be null");
         validateStoreOpen();
 
-        return convertCursor(this.collection.find(findOptions));
+        long start = System.nanoTime();
+        return convertCursor(findInSnapshot(snapshot(), filter, findOptions, start));
     }
 
+    /**
+     * Explains a query by executing it against a snapshot, see {@link QueryExplainer}.
+     */
     @Override
-    public Cursor<Doc> findWithOptions(Filter filter, FindOptions findOptions) {
+    public QueryPlan explain(Filter filter, FindOptions findOptions) {
         Objects.requireNonNull(findOptions, "findOptions cannot be null");
         validateStoreOpen();
 
-        return convertCursor(this.collection.find(filter, findOptions));
+        try (DocumentSnapshot snapshot = snapshot()) {
+            CompoundIndex.Lookup lookup = filter == null ? null : CompoundIndex.lookup(compoundIndices, filter, snapshot::changedSince);
+            return QueryExplainer.explain(snapshot, lookup, filter, findOptions);
+        }
+    }
+
+    @Override
+    public List<IndexRecommendation> recommendIndices() {
+        return this.indexAdvisor == null ? List.of() : this.indexAdvisor.recommendations();
+    }
+
+    @Override
+    public long pinSnapshot(Long snapshot) {
+        validateStoreOpen();
+
+        return this.pinnedSnapshots.pin(snapshot, this::snapshot);
+    }
+
+    @Override
+    public StreamingCursor<Doc> findWithOptions(Filter filter, FindOptions findOptions, long snapshot) {
+        Objects.requireNonNull(findOptions, "findOptions cannot be null");
+        validateStoreOpen();
+
+        long start = System.nanoTime();
+        DocumentSnapshot pinned = this.pinnedSnapshots.get(snapshot);
+        if (pinned == null) {
+            logger.warn("Snapshot {} of store {} for partition {} is no longer pinned", snapshot, name, partition);
+            throw new SnapshotExpiredException(name, partition, snapshot);
+        }
+        return convertCursor(findInSnapshot(pinned, filter, findOptions, start));
+    }
+
+    /**
+     * Takes a snapshot of the collection, showing the documents written but not stored yet in place of the stored ones.
+     */
+    private DocumentSnapshot snapshot() {
+        return this.collectionInternals.snapshot(pendingDocuments());
+    }
+
+    /**
+     * @return the documents written but not stored yet, which queries have to see, see {@link CachingNitriteDocumentStore}
+     */
+    PendingDocuments pendingDocuments() {
+        return null;
+    }
+
+    /**
+     * @param snapshot the snapshot to query, which is handed over to the returned cursor
+     */
+    private ResultSetCursor findInSnapshot(DocumentSnapshot snapshot, Filter filter, FindOptions findOptions, long start) {
+        try {
+            LongAdder reads = new LongAdder();
+            Set<NitriteId> matches = search(snapshot, filter, reads);
+            long filterReads = reads.sum();
+            if (filter != null && matches.isEmpty()) {
+                recordQuery(filter, findOptions, start, filterReads, reads, 0);
+                return new ResultSetCursor(Set.of(), snapshot, false, 0);
+            }
+            validateLimit(findOptions, matches.size());
+
+            boolean hasMore = matches.size() > (long) findOptions.getSize() + findOptions.getOffset();
+            Set<NitriteId> page = findPage(matches, metered(snapshot, reads), findOptions);
+            recordQuery(filter, findOptions, start, filterReads, reads, page.size());
+            return new ResultSetCursor(page, snapshot, hasMore, matches.size());
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the matches of a filter, restricting the snapshot it is evaluated against to the documents a compound index
+     * selects for it, if any covers its predicates. The filter is still evaluated as a whole, as the index holds the
+     * current values of the documents, but only reads the selected ones. If a field covered by the lookup changed
+     * while it was read, the filter is evaluated against the whole snapshot instead.
+     */
+    private Set<NitriteId> search(DocumentSnapshot snapshot, Filter filter, LongAdder reads) {
+        CompoundIndex.Lookup lookup = filter == null ? null : CompoundIndex.lookup(compoundIndices, filter, snapshot::changedSince);
+        if (lookup != null) {
+            Set<NitriteId> matches = metered(snapshot.restrictedTo(lookup.find()), reads).find(filter);
+            if (!lookup.changed(snapshot::changedSince)) {
+                return matches;
+            }
+        }
+        return metered(snapshot, reads).find(filter);
+    }
+
+    /**
+     * Counts the entries read by a query when the store is metered, logs slow queries or advises indices. The documents
+     * of the returned cursor are resolved against the snapshot itself, so only the entries read to filter and sort are
+     * counted.
+     */
+    private DocumentSnapshot metered(DocumentSnapshot snapshot, LongAdder reads) {
+        return this.metrics == null && this.slowQueryLog == null && this.indexAdvisor == null ? snapshot : snapshot.countingReads(reads);
+    }
+
+    /**
+     * @param filterReads the entries read to evaluate the filter
+     * @param reads       the entries read to evaluate the filter and to sort the matches
+     */
+    private void recordQuery(Filter filter, FindOptions findOptions, long start, long filterReads, LongAdder reads, int returned) {
+        if (this.metrics != null) {
+            this.metrics.recordQuery(reads.sum(), returned);
+        }
+        if (this.slowQueryLog != null) {
+            this.slowQueryLog.record(name, getPartition(), SlowQueryLog.fingerprint(filter, findOptions), System.nanoTime() - start, reads.sum(), returned);
+        }
+        if (this.indexAdvisor != null) {
+            List<String> toIndex = this.indexAdvisor.record(filter, findOptions, filterReads,
+                    (field) -> collection.hasIndex(field) && !collection.isIndexing(field));
+            this.advisedIndices.addAll(toIndex);
+        }
+    }
+
+    /**
+     * Creates the indices recommended by the {@link IndexAdvisor} since the last flush. They are created by the stream
+     * thread rather than by the queries recording them, as creating an index reads the collection and records the
+     * change of the field, which only the writer may do. Nitrite builds them asynchronously, so the flush doesn't wait
+     * for them. They are kept across restarts, like indices created through {@link #createIndex(String, IndexOptions)},
+     * and are reported as not being defined in the code until they are.
+     */
+    private void createAdvisedIndices() {
+        String field;
+        while ((field = this.advisedIndices.poll()) != null) {
+            if (collection.hasIndex(field)) {
+                continue;
+            }
+            logger.info("Creating index on {} of store {} for partition {} as its queries keep scanning the documents", field, name, partition);
+            createIndex(field, IndexOptions.indexOptions(IndexType.NonUnique, true));
+        }
+    }
+
+    static Set<NitriteId> findPage(Set<NitriteId> matches, DocumentSnapshot snapshot, FindOptions findOptions) {
+        if (!isNullOrEmpty(findOptions.getField())) {
+            return findSortedPage(matches, snapshot, findOptions);
+        }
+
+        Set<NitriteId> page = new LinkedHashSet<>();
+        long end = findOptions.getSize() > 0 ? (long) findOptions.getOffset() + findOptions.getSize() : Long.MAX_VALUE;
+        int index = 0;
+        for (Iterator<NitriteId> ids = matches.iterator(); ids.hasNext() && index < end; index++) {
+            NitriteId nitriteId = ids.next();
+            if (index >= findOptions.getOffset()) {
+                page.add(nitriteId);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Selects a sorted page out of the matching documents by only keeping the best {@code offset + size} candidates
+     * on a heap, rather than sorting all matches the way Nitrite does before applying the limit. Documents with equal
+     * sort values are ordered by id, so consecutive pages are consistent.
+     */
+    private static Set<NitriteId> findSortedPage(Set<NitriteId> matches, DocumentSnapshot snapshot, FindOptions findOptions) {
+        String sortField = findOptions.getField();
+        Comparator<Map.Entry<NitriteId, Object>> comparator = Map.Entry.<NitriteId, Object>comparingByValue(sortValueComparator(findOptions))
+                .thenComparing(Map.Entry.comparingByKey());
+        int limit = findOptions.getSize() > 0
+                ? (int) Math.min((long) findOptions.getOffset() + findOptions.getSize(), Integer.MAX_VALUE)
+                : matches.size();
+
+        PriorityQueue<Map.Entry<NitriteId, Object>> candidates = new PriorityQueue<>(comparator.reversed());
+        for (NitriteId nitriteId : matches) {
+            Document document = snapshot.get(nitriteId);
+            if (document == null) continue;
+
+            Map.Entry<NitriteId, Object> candidate = new SimpleImmutableEntry<>(nitriteId, sortValue(document, sortField));
+            if (candidates.size() < limit) {
+                candidates.add(candidate);
+            } else if (comparator.compare(candidate, candidates.peek()) < 0) {
+                candidates.poll();
+                candidates.add(candidate);
+            }
+        }
+
+        List<Map.Entry<NitriteId, Object>> sorted = new ArrayList<>(candidates);
+        sorted.sort(comparator);
+        Set<NitriteId> resultSet = new LinkedHashSet<>();
+        for (int i = findOptions.getOffset(); i < sorted.size(); i++) {
+            resultSet.add(sorted.get(i).getKey());
+        }
+        return resultSet;
     }
 
     @Override
@@ -232,6 +713,13 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         Objects.requireNonNull(value, "value cannot be null");
         validateStoreOpen();
 
+        if (enableLogging && patchSnapshotInterval > 0) {
+            final Document previous = this.storedDocument(key);
+            this.store(key, value);
+            this.logPatch(key, previous, value);
+            return;
+        }
+
         this.store(key, value);
         if (enableLogging) {
             this.log(key, value);
@@ -248,6 +736,9 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         if (enableLogging && previous == null) {
             // then it was absent
             log(key, value);
+            if (patchSnapshotInterval > 0) {
+                patchesSinceSnapshot.put(key, 0);
+            }
         }
         return previous;
     }
@@ -257,6 +748,13 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         Objects.requireNonNull(entries, "entries cannot be null");
         validateStoreOpen();
 
+        if (enableLogging && patchSnapshotInterval > 0) {
+            for (KeyValue<Key, Doc> entry : entries) {
+                this.put(entry.key, entry.value);
+            }
+            return;
+        }
+
         this.storeAll(entries);
         if (enableLogging) {
             for (KeyValue<Key, Doc> entry : entries) {
@@ -273,57 +771,332 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
         final Doc oldValue = this.remove(key);
         if (enableLogging) {
             log(key, null);
+            if (patchSnapshotInterval > 0 && oldValue != null) {
+                logPatchTombstones(key);
+                patchesSinceSnapshot.remove(key);
+            }
         }
         return oldValue;
     }
 
+    boolean loggingEnabled() {
+        return enableLogging;
+    }
+
     void log(final Key key,
              final Doc value) {
+        if (coalesceChangelog) {
+            // re-inserted, so the keys are logged in the order of their last change
+            unloggedChanges.remove(key);
+            unloggedChanges.put(key, context.timestamp());
+            return;
+        }
+        log(key, value, context.timestamp());
+    }
+
+    private void log(final Key key,
+                     final Doc value,
+                     final long timestamp) {
+        final byte[] rawValue = this.serdes.rawValue(value);
+        if (fieldNames != null) {
+            logFieldNames(timestamp);
+        }
         context.logChange(
                 name(),
                 Bytes.wrap(this.serdes.rawKey(key)),
-                this.serdes.rawValue(value),
+                rawValue,
+                timestamp);
+    }
+
+    /**
+     * Logs the current version of every document changed since the last flush, or a tombstone if it was deleted since,
+     * with the timestamp of its last change. Reading the stored version rather than keeping the written ones means
+     * only documents changed in between have to be serialized, and only once.
+     */
+    private void logUnloggedChanges() {
+        for (Map.Entry<Key, Long> change : unloggedChanges.entrySet()) {
+            log(change.getKey(), lookup(change.getKey()), change.getValue());
+        }
+        unloggedChanges.clear();
+    }
+
+    /**
+     * Logs only the fields which changed since the previous version of the document, unless it is new or enough patches
+     * have been logged since its last full record. Nothing is logged if no field changed.
+     */
+    private void logPatch(final Key key, final Document previous, final Doc value) {
+        final Integer patches = patchesSinceSnapshot.get(key);
+        if (previous == null || patches == null || patches >= patchSnapshotInterval) {
+            log(key, value);
+            if (previous != null) {
+                logPatchTombstones(key);
+            }
+            patchesSinceSnapshot.put(key, 0);
+            return;
+        }
+
+        final Document patch = ChangelogPatches.diff(previous, value);
+        if (patch == null) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        final byte[] rawPatch = changelogSerde.serializer().serialize(serdes.topic(), (Doc) patch);
+        if (fieldNames != null) {
+            logFieldNames(context.timestamp());
+        }
+        context.logChange(
+                name(),
+                Bytes.wrap(ChangelogPatches.patchKey(this.serdes.rawKey(key), patches + 1)),
+                rawPatch,
                 context.timestamp());
+        patchesSinceSnapshot.put(key, patches + 1);
+    }
+
+    /**
+     * Deletes the patch records logged since the last full record of a key. If their number is not known, all patch
+     * keys the key could have are deleted.
+     */
+    private void logPatchTombstones(final Key key) {
+        final int patches = patchesSinceSnapshot.getOrDefault(key, patchSnapshotInterval);
+        final byte[] rawKey = this.serdes.rawKey(key);
+        for (int sequence = 1; sequence <= patches; sequence++) {
+            context.logChange(name(), Bytes.wrap(ChangelogPatches.patchKey(rawKey, sequence)), null, context.timestamp());
+        }
+        patchesSinceSnapshot.put(key, 0);
+    }
+
+    /**
+     * Logs the chunks holding the field names assigned since they were last logged, ahead of the value which uses them.
+     * The first chunks of every instance hold the whole dictionary, as the names loaded from the state directory may
+     * never have been logged. Chunks are keyed by their range of ids, so logging one again replaces it.
+     */
+    private void logFieldNames(final long timestamp) {
+        final int size = fieldNames.size();
+        if (size > loggedFieldNames) {
+            for (int start = FieldNameDictionary.chunkStart(loggedFieldNames); start < size; start += FieldNameDictionary.CHUNK_IDS) {
+                context.logChange(
+                        name(),
+                        Bytes.wrap(FieldNameDictionary.chunkKey(start)),
+                        fieldNames.encodeChunk(start),
+                        timestamp);
+            }
+            loggedFieldNames = size;
+        }
     }
 
 // == Internal Operations (no logging) ================================================================================
 
     protected synchronized void store(Key key, Doc value) {
-        this.collection.update(Filters.eq(keyFieldName, key), value, updateOptions(true));
+        NitriteId nitriteId = keyIndex.get(key);
+        if (nitriteId == null) {
+            this.insert(key, value);
+        } else {
+            this.update(nitriteId, value);
+        }
     }
 
     protected synchronized Doc storeIfAbsent(Key key, Doc value) {
-        Doc existing = this.get(key);
-        if (existing == null) {
-            this.store(key, value);
+        NitriteId nitriteId = keyIndex.get(key);
+        Document existing = nitriteId == null ? null : this.collectionInternals.getById(nitriteId);
+        if (existing != null) {
+            return copyOf(existing);
+        }
+
+        this.insert(key, value);
+        return null;
+    }
+
+    private void insert(Key key, Doc value) {
+        keyIndexChanging();
+        this.collection.insert(value);
+        keyIndex.put(key, value.getId());
+        indexCompound(NO_COMPOUND_ENTRIES, value.getId());
+    }
+
+    private void update(NitriteId nitriteId, Document update) {
+        Object[][] previous = compoundEntries(nitriteId);
+        changing(changedFields(this.collectionInternals.getById(nitriteId), update), () -> {
+            this.collection.update(byId(nitriteId), update, updateOptions(false));
+            indexCompound(previous, nitriteId);
+        });
+    }
+
+    /**
+     * @return the fields an update changes in the stored document, Nitrite merges the update into it and sets its
+     * revision and modification time
+     */
+    private static Set<String> changedFields(Document stored, Document update) {
+        Set<String> changed = new HashSet<>(List.of(DOC_REVISION, DOC_MODIFIED));
+        for (Map.Entry<String, Object> field : update.entrySet()) {
+            if (stored == null || !Objects.equals(stored.get(field.getKey()), field.getValue())) {
+                changed.add(field.getKey());
+            }
+        }
+        changed.remove(DOC_ID);
+        return changed;
+    }
+
+    /**
+     * Records a write changing the values of fields, so the snapshots taken before don't use the indices for them,
+     * see {@link FieldChanges}. Inserts don't need to, as the documents they add are not part of those snapshots.
+     */
+    private void changing(Set<String> fields, Runnable write) {
+        FieldChanges fieldChanges = this.collectionInternals.fieldChanges();
+        fieldChanges.begin(fields);
+        try {
+            write.run();
+        } finally {
+            fieldChanges.end(fields);
         }
+    }
 
-        return existing;
+    /**
+     * @return the entries of the stored document in the compound indices, which have to be taken before the document
+     * is changed, to replace them by the entries of the changed document afterwards
+     */
+    private Object[][] compoundEntries(NitriteId nitriteId) {
+        if (compoundIndices.isEmpty()) {
+            return NO_COMPOUND_ENTRIES;
+        }
+        Document stored = this.collectionInternals.getById(nitriteId);
+        Object[][] entries = new Object[compoundIndices.size()][];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = stored == null ? null : compoundIndices.get(i).entry(nitriteId, stored);
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces the entries of a document in the compound indices by the entries of the stored document.
+     */
+    private void indexCompound(Object[][] previous, NitriteId nitriteId) {
+        if (compoundIndices.isEmpty()) {
+            return;
+        }
+        Object[][] current = compoundEntries(nitriteId);
+        for (int i = 0; i < current.length; i++) {
+            compoundIndices.get(i).replace(previous.length == 0 ? null : previous[i], current[i]);
+        }
     }
 
     protected synchronized void storeAll(List<KeyValue<Key, Doc>> entries) {
+        // a single pass over the key index splits the batch, later entries of a new key are merged into its insert
+        Map<Key, Doc> inserts = new LinkedHashMap<>();
+        List<KeyValue<Key, Doc>> updates = new ArrayList<>();
         for (KeyValue<Key, Doc> entry : entries) {
-            this.collection.update(Filters.eq(keyFieldName, entry.key), entry.value, updateOptions(true));
+            if (inserts.containsKey(entry.key) || keyIndex.containsKey(entry.key)) {
+                updates.add(entry);
+            } else {
+                inserts.put(entry.key, entry.value);
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            this.insertAll(inserts);
+        }
+        for (KeyValue<Key, Doc> update : updates) {
+            this.update(keyIndex.get(update.key), update.value);
         }
     }
 
-    protected Doc remove(Key key) {
-        Doc result = this.get(key);
-        if (result == null) {
-            return null;
+    private void insertAll(Map<Key, Doc> inserts) {
+        Map<String, IndexOptions> suspended = Map.of();
+        if (inserts.size() >= BULK_INSERT_THRESHOLD && inserts.size() >= collection.size()) {
+            // unique indices stay in place, so a violation still fails the insert rather than the rebuild
+            suspended = suspendIndices((index) -> index.getIndexType() != IndexType.Unique);
         }
 
-        this.collection.remove(Filters.eq(keyFieldName, key));
+        keyIndexChanging();
+        try {
+            this.collection.insert(inserts.values().toArray(new Document[0]));
+        } catch (RuntimeException e) {
+            // keep track of the documents inserted before the failure
+            inserts.forEach((key, value) -> {
+                if (value.containsKey(DOC_ID) && this.collection.getById(value.getId()) != null) {
+                    keyIndex.put(key, value.getId());
+                    indexCompound(NO_COMPOUND_ENTRIES, value.getId());
+                }
+            });
+            throw e;
+        } finally {
+            resumeIndices(suspended);
+        }
+        inserts.forEach((key, value) -> {
+            keyIndex.put(key, value.getId());
+            indexCompound(NO_COMPOUND_ENTRIES, value.getId());
+        });
+    }
 
+    /**
+     * @return the stored instance of the document of a key, which must not be changed, or {@code null}
+     */
+    Document storedDocument(Key key) {
+        NitriteId nitriteId = keyIndex.get(key);
+        return nitriteId == null ? null : this.collectionInternals.getById(nitriteId);
+    }
+
+    private synchronized void applyPatch(Key key, Document patch) {
+        NitriteId nitriteId = keyIndex.get(key);
+        if (nitriteId == null) {
+            logger.warn("Skipping patch of missing document {} of store {} for partition {}", key, name, partition);
+            return;
+        }
+        this.update(nitriteId, patch);
+    }
+
+    protected synchronized Doc remove(Key key) {
+        keyIndexChanging();
+        NitriteId nitriteId = keyIndex.remove(key);
+        if (nitriteId == null) {
+            return null;
+        }
+
+        Document stored = this.collectionInternals.getById(nitriteId);
+        if (stored == null) {
+            return null;
+        }
+        Doc result = copyOf(stored);
+        Object[][] previous = compoundEntries(nitriteId);
+        changing(stored.keySet(), () -> {
+            // Nitrite sets _revision and _modified on the instance it takes out of the map, which the snapshots still hold
+            this.collectionInternals.detach(nitriteId);
+            this.collection.remove(byId(nitriteId));
+            indexCompound(previous, nitriteId);
+        });
         return result;
     }
 
+    private Doc lookup(Key key) {
+        NitriteId nitriteId = keyIndex.get(key);
+        if (nitriteId == null) {
+            return null;
+        }
+
+        Document document = this.collectionInternals.getById(nitriteId);
+        if (document == null) {
+            return null;
+        }
+        return copyOf(document);
+    }
+
+    /**
+     * @return a copy of a stored or cached document, converted to the document type of the store
+     */
+    Doc copyOf(Document document) {
+        return documentConverter.apply(new Document(document));
+    }
+
+    private static Filter byId(NitriteId nitriteId) {
+        return Filters.eq(DOC_ID, nitriteId.getIdValue());
+    }
+
     @Override
     public int getPartition() {
         return partition;
     }
 
-    private Cursor<Doc> convertCursor(org.dizitart.no2.Cursor collectionCursor) {
+    private StreamingCursor<Doc> convertCursor(ResultSetCursor collectionCursor) {
         return new DocumentCursor<>(collectionCursor, documentConverter);
     }
 
@@ -331,12 +1104,13 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
 
     @Override
     public void createIndex(String field, IndexOptions indexOptions) {
-        collection.createIndex(field, indexOptions);
+        // the new index holds the current values, which the snapshots taken before may not
+        changing(Set.of(field), () -> collection.createIndex(field, indexOptions));
     }
 
     @Override
     public void rebuildIndex(String field, boolean async) {
-        collection.rebuildIndex(field, async);
+        changing(Set.of(field), () -> collection.rebuildIndex(field, async));
     }
 
     @Override
@@ -366,7 +1140,96 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
 
 // == Replay ==========================================================================================================
 
-    private static class NitriteRestoreCallback<K, D extends Document> implements StateRestoreCallback {
+    /**
+     * Drops the non-unique secondary indices ahead of a restore which replays at least as many records as the store
+     * currently holds, so the restored records do not have to maintain them one by one. Unique indices stay in place,
+     * so a duplicate still fails its record rather than the rebuild, and so do indices which are still being built.
+     *
+     * @param recordsToRestore the number of changelog records the restore is about to replay
+     */
+    synchronized void beginBulkLoad(long recordsToRestore) {
+        if (!isOpen() || collection.size() > recordsToRestore) {
+            return;
+        }
+
+        suspendedIndices = suspendIndices((index) -> index.getIndexType() != IndexType.Unique);
+        logger.info("Suspended indices {} of store {} for partition {} while restoring {} records", suspendedIndices.keySet(), name, partition, recordsToRestore);
+    }
+
+    /**
+     * @return whether a unique index is in place, which bulk loads never suspend
+     */
+    private boolean hasUniqueIndex() {
+        return collection.listIndices().stream().anyMatch((index) -> index.getIndexType() == IndexType.Unique);
+    }
+
+    /**
+     * Drops the matching indices which are not being built at the moment.
+     *
+     * @return the dropped indices
+     */
+    /**
+     * Drops the indices matching a predicate, except the ones still being built, recording them in the file first.
+     *
+     * @return the dropped indices along with their options
+     */
+    private Map<String, IndexOptions> suspendIndices(Predicate<Index> predicate) {
+        Map<String, IndexOptions> suspended = new LinkedHashMap<>();
+        for (Index index : collection.listIndices()) {
+            if (predicate.test(index) && !collection.isIndexing(index.getField())) {
+                IndexOptions options = indices.getOrDefault(index.getField(), IndexOptions.indexOptions(index.getIndexType()));
+                droppedIndices.put(index.getField(), encode(options));
+                collection.dropIndex(index.getField());
+                suspended.put(index.getField(), options);
+            }
+        }
+        return suspended;
+    }
+
+    private void resumeIndices(Map<String, IndexOptions> suspended) {
+        suspended.forEach((field, options) -> {
+            createIndex(field, options);
+            droppedIndices.remove(field);
+        });
+    }
+
+    /**
+     * Creates the indices which were still suspended when the store was last closed, as it crashed in the meantime.
+     */
+    private void createDroppedIndices() {
+        for (Map.Entry<String, String> dropped : new ArrayList<>(droppedIndices.entrySet())) {
+            logger.warn("Creating index on {} of store {} for partition {} again, which was suspended when the store was last closed", dropped.getKey(), name, partition);
+            if (!collection.hasIndex(dropped.getKey())) {
+                createIndex(dropped.getKey(), decode(dropped.getValue()));
+            }
+            droppedIndices.remove(dropped.getKey());
+        }
+    }
+
+    private static String encode(IndexOptions options) {
+        return options.getIndexType().name() + (options.isAsync() ? ",async" : "");
+    }
+
+    private static IndexOptions decode(String options) {
+        String[] parts = options.split(",");
+        return IndexOptions.indexOptions(IndexType.valueOf(parts[0]), parts.length > 1);
+    }
+
+    /**
+     * Rebuilds the indices dropped by {@link #beginBulkLoad(long)}, each in a single pass over the restored collection.
+     */
+    synchronized void endBulkLoad() {
+        if (!isOpen() || suspendedIndices.isEmpty()) {
+            return;
+        }
+
+        resumeIndices(suspendedIndices);
+        logger.info("Rebuilt indices {} of store {} for partition {}", suspendedIndices.keySet(), name, partition);
+        suspendedIndices = Map.of();
+        flush();
+    }
+
+    private static class NitriteRestoreCallback<K, D extends Document> implements BatchingStateRestoreCallback {
 
         private final NitriteDocumentStore<K, D> store;
 
@@ -374,16 +1237,92 @@ public class NitriteDocumentStore<Key, Doc extends Document> implements Writable
             this.store = store;
         }
 
-        // TODO: write IT to verify its workings !!!
+        @Override
+        public void restoreAll(Collection<KeyValue<byte[], byte[]>> records) {
+            long start = System.nanoTime();
+            if (store.hasUniqueIndex()) {
+                // applying the records of a key at its first position could take a value another key only gives up later on
+                records.forEach((record) -> restore(record.key, record.value));
+            } else {
+                restoreLatest(records);
+            }
+            store.flush();
+            if (store.metrics != null) {
+                store.metrics.recordRestore(records.size(), start);
+            }
+        }
+
+        /**
+         * Applies only the last record for every key within the batch, followed by the patches logged after it.
+         */
+        private void restoreLatest(Collection<KeyValue<byte[], byte[]>> records) {
+            Map<Bytes, RestoredRecords> latestValues = new LinkedHashMap<>();
+            for (KeyValue<byte[], byte[]> record : records) {
+                if (isFieldNames(record.key)) {
+                    store.fieldNames.applyChunk(record.value);
+                } else if (isPatch(record.key)) {
+                    if (record.value != null) {
+                        latestValues.computeIfAbsent(Bytes.wrap(ChangelogPatches.documentKey(record.key)), (key) -> new RestoredRecords()).patches.add(record);
+                    }
+                } else {
+                    RestoredRecords restored = new RestoredRecords();
+                    restored.value = record;
+                    latestValues.put(Bytes.wrap(record.key), restored);
+                }
+            }
+
+            for (RestoredRecords restored : latestValues.values()) {
+                if (restored.value != null) {
+                    restore(restored.value.key, restored.value.value);
+                }
+                for (KeyValue<byte[], byte[]> patch : restored.patches) {
+                    restore(patch.key, patch.value);
+                }
+            }
+        }
+
         @Override
         public void restore(byte[] key, byte[] value) {
+            if (isFieldNames(key)) {
+                store.fieldNames.applyChunk(value);
+                return;
+            }
+            if (isPatch(key)) {
+                if (value != null) {
+                    K k = store.serdes.keyFrom(ChangelogPatches.documentKey(key));
+                    store.applyPatch(k, store.changelogSerde.documentDeserializer().deserialize(store.serdes.topic(), value));
+                    store.patchesSinceSnapshot.put(k, ChangelogPatches.sequence(key));
+                }
+                return;
+            }
+
             K k = store.serdes.keyFrom(key);
             D v = store.serdes.valueFrom(value);
             if (v == null) {
                 store.remove(k);
+                store.patchesSinceSnapshot.remove(k);
             } else {
                 store.store(k, v);
+                if (store.patchSnapshotInterval > 0) {
+                    store.patchesSinceSnapshot.put(k, 0);
+                }
             }
         }
+
+        private boolean isFieldNames(byte[] key) {
+            return store.fieldNames != null && FieldNameDictionary.isChunkKey(key);
+        }
+
+        private boolean isPatch(byte[] key) {
+            return store.patchSnapshotInterval > 0 && ChangelogPatches.isPatchKey(key);
+        }
+
+        /**
+         * The last full record of a key within a batch, if any, and the patches logged for the key after it.
+         */
+        private static final class RestoredRecords {
+            private KeyValue<byte[], byte[]> value;
+            private final List<KeyValue<byte[], byte[]>> patches = new ArrayList<>();
+        }
     }
 }
@@ -8,6 +8,7 @@ import java.util.Objects;
 import java.util.function.Function;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.techasylum.kafka.statestore.document.SlowQueryLog;
 import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.streams.state.StoreBuilder;
@@ -18,17 +19,29 @@ import org.dizitart.no2.IndexType;
 public class NitriteDocumentStoreBuilder<Key, Doc extends Document> implements StoreBuilder<
         NitriteDocumentStore<Key, Doc>> {
 
+    static final int DEFAULT_MAX_CACHE_ENTRIES = 1000;
+    static final int DEFAULT_PATCH_SNAPSHOT_INTERVAL = 10;
+
     private final String name;
     private final Serde<Key> keySerde;
     private final DocumentSerde<Doc> valueSerde;
     private final String keyFieldName;
-    private final Function<Document, Doc> documentConverter;
+    private Function<Document, Doc> documentConverter;
 
     private Map<String, String> logConfig = new HashMap<>();
     private final Map<String, IndexOptions> indices = new HashMap<>();
+    private final List<List<String>> compoundIndices = new ArrayList<>();
     private final List<NitriteCustomizer> customizers = new ArrayList<>();
+    private BulkLoadingRestoreListener bulkLoadingRestoreListener;
+    private SlowQueryLog slowQueryLog;
+    private long indexAdvisorScanThreshold = 0;
+    private boolean createAdvisedIndices = false;
 
     boolean enableLogging = true;
+    boolean enableCaching = false;
+    int maxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+    int patchSnapshotInterval = 0;
+    boolean coalesceChangelog = false;
 
     public NitriteDocumentStoreBuilder(String name, String keyFieldName, Serde<Key> keySerde, DocumentSerde<Doc> valueSerde, Function<Document, Doc> documentConverter) {
         this.name = name;
@@ -38,13 +51,37 @@ public class NitriteDocumentStoreBuilder<Key, Doc extends Document> implements S
         this.documentConverter = documentConverter;
     }
 
+    /**
+     * Keeps up to {@value #DEFAULT_MAX_CACHE_ENTRIES} written documents in memory between commits.
+     *
+     * @return the Nitrite document store builder
+     * @see #withCachingEnabled(int)
+     */
     @Override
     public NitriteDocumentStoreBuilder<Key, Doc> withCachingEnabled() {
-        throw new UnsupportedOperationException("caching is not available for nitrite stores");
+        return withCachingEnabled(DEFAULT_MAX_CACHE_ENTRIES);
+    }
+
+    /**
+     * Keeps the written documents in memory between commits, so repeated writes to the same key only reach Nitrite
+     * and the changelog once when the store is flushed.
+     *
+     * @param maxCacheEntries the number of documents to keep in memory before the least recently written ones are stored
+     * @return the Nitrite document store builder
+     * @see CachingNitriteDocumentStore
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withCachingEnabled(int maxCacheEntries) {
+        if (maxCacheEntries <= 0) {
+            throw new IllegalArgumentException("maxCacheEntries must be positive");
+        }
+        enableCaching = true;
+        this.maxCacheEntries = maxCacheEntries;
+        return this;
     }
 
     @Override
     public NitriteDocumentStoreBuilder<Key, Doc> withCachingDisabled() {
+        enableCaching = false;
         return this;
     }
 
@@ -133,6 +170,26 @@ public class NitriteDocumentStoreBuilder<Key, Doc extends Document> implements S
         return this;
     }
 
+    /**
+     * Adds an index on several fields to the document store, for filters combining equality predicates on the first
+     * fields with a range on the next one, like {@code and(eq("tenant", tenant), gte("date", from))} for an index on
+     * {@code "tenant", "date"}. Such a filter is answered by a single range of the index rather than by intersecting
+     * the matches of every predicate or scanning the documents.
+     *
+     * Nitrite only supports indices on single fields, so the index is kept in memory by the store itself, maintained
+     * on every write and rebuilt from the documents when the store is opened.
+     *
+     * @param fields the fields to index, in the order of the predicates the index can answer
+     * @return the Nitrite document store builder
+     * @see CompoundIndex
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withCompoundIndex(String... fields) {
+        List<String> indexed = List.of(fields);
+        new CompoundIndex(indexed); // validates the fields
+        compoundIndices.add(indexed);
+        return this;
+    }
+
     /**
      * Adds a customizer to customize the Nitrite document store.
      *
@@ -144,9 +201,153 @@ public class NitriteDocumentStoreBuilder<Key, Doc extends Document> implements S
         return this;
     }
 
+    /**
+     * Suspends the indices of the document store while its changelog is being restored and rebuilds them once the
+     * restore has completed. The listener has to be registered as the global restore listener of the application.
+     *
+     * @param listener the restore listener
+     * @return the Nitrite document store builder
+     * @see BulkLoadingRestoreListener
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withBulkLoadingRestore(BulkLoadingRestoreListener listener) {
+        this.bulkLoadingRestoreListener = Objects.requireNonNull(listener, "listener can't be null");
+        return this;
+    }
+
+    /**
+     * Copies the nested values of every document read from the store before converting it, so callers changing the
+     * returned documents can't corrupt the stored ones. Mostly useful for stores of plain {@link Document}s, which
+     * are not converted otherwise.
+     *
+     * @return the Nitrite document store builder
+     * @see DocumentConverters#deepCopy()
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withDeepCopies() {
+        this.documentConverter = DocumentConverters.deepCopy().andThen(this.documentConverter);
+        return this;
+    }
+
+    /**
+     * Logs every {@value #DEFAULT_PATCH_SNAPSHOT_INTERVAL}th update of a document in full and only its changed fields
+     * for the updates in between.
+     *
+     * @return the Nitrite document store builder
+     * @see #withPatchChangelog(int)
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withPatchChangelog() {
+        return withPatchChangelog(DEFAULT_PATCH_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Logs only the top-level fields which changed when a document is updated, rather than the whole document, and
+     * restores the document by applying these patches to its last full record. Can't be combined with caching.
+     *
+     * @param snapshotInterval the number of patches to log for a document before logging it in full again, which bounds
+     *                         the number of patches to replay per document
+     * @return the Nitrite document store builder
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withPatchChangelog(int snapshotInterval) {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("snapshotInterval must be positive");
+        }
+        if (valueSerde.documentDeserializer() == null) {
+            throw new IllegalArgumentException("Patch records require a value serde which can read plain documents");
+        }
+        this.patchSnapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    /**
+     * Logs only the latest version of every document changed between two commits, when the store is flushed, rather
+     * than a changelog record for every change. Unlike caching, the changes are still written to Nitrite right away.
+     * Has no effect on caching stores, which already coalesce their changelog records, and can't be combined with
+     * patch records.
+     *
+     * @return the Nitrite document store builder
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withCoalescedChangelog() {
+        this.coalesceChangelog = true;
+        return this;
+    }
+
+    /**
+     * Logs the queries of the document store which exceed the thresholds of the given log and keeps the statistics of
+     * the most expensive ones. The same log can be passed to
+     * {@link io.techasylum.kafka.statestore.document.QueryableDocumentStoreTypes#documentStore(java.util.concurrent.Executor, SlowQueryLog)}
+     * to log the queries over all partitions as well. The entries over all partitions only measure latency, the
+     * documents scanned are recorded by the entries of the individual partitions.
+     *
+     * @param slowQueryLog the slow query log
+     * @return the Nitrite document store builder
+     * @see SlowQueryLog
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = Objects.requireNonNull(slowQueryLog, "slowQueryLog can't be null");
+        return this;
+    }
+
+    /**
+     * Records the fields the queries of the document store filter and sort on, and recommends indexing the fields whose
+     * predicates scanned at least the given number of documents in total, see
+     * {@link NitriteDocumentStore#recommendIndices()}.
+     *
+     * @param scanThreshold the number of documents the predicates on a field have to scan to recommend indexing it
+     * @return the Nitrite document store builder
+     * @see #withIndexAdvisor(long, boolean)
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withIndexAdvisor(long scanThreshold) {
+        return withIndexAdvisor(scanThreshold, false);
+    }
+
+    /**
+     * Records the fields the queries of the document store filter and sort on, and recommends indexing the fields whose
+     * predicates scanned at least the given number of documents in total. The recommended fields can be indexed on the
+     * next flush of the store, with an asynchronous non-unique index, which stays in place until it is dropped.
+     *
+     * @param scanThreshold the number of documents the predicates on a field have to scan to recommend indexing it
+     * @param createIndices whether to index the recommended fields
+     * @return the Nitrite document store builder
+     */
+    public NitriteDocumentStoreBuilder<Key, Doc> withIndexAdvisor(long scanThreshold, boolean createIndices) {
+        if (scanThreshold <= 0) {
+            throw new IllegalArgumentException("scanThreshold must be positive");
+        }
+        this.indexAdvisorScanThreshold = scanThreshold;
+        this.createAdvisedIndices = createIndices;
+        return this;
+    }
+
+    /**
+     * Wraps the stores in a {@link MeteredNitriteDocumentStore}, which records the latency and rate of their operations
+     * with the metrics of the Kafka Streams application. The returned builder shares the configuration of this one,
+     * so it should be configured first.
+     *
+     * @return the builder of metered stores
+     */
+    public MeteredNitriteDocumentStoreBuilder<Key, Doc> metered() {
+        return new MeteredNitriteDocumentStoreBuilder<>(this);
+    }
+
     @Override
     public NitriteDocumentStore<Key, Doc> build() {
-        return new NitriteDocumentStore(this.name, this.keySerde, this.valueSerde, this.keyFieldName, this.documentConverter, indices, customizers, enableLogging);
+        if (enableCaching && patchSnapshotInterval > 0) {
+            throw new IllegalStateException("Patch records can't be combined with caching");
+        }
+        if (coalesceChangelog && patchSnapshotInterval > 0) {
+            throw new IllegalStateException("Patch records can't be combined with coalescing the changelog");
+        }
+        NitriteDocumentStore<Key, Doc> store;
+        if (enableCaching) {
+            store = new CachingNitriteDocumentStore(this.name, this.keySerde, this.valueSerde, this.keyFieldName, this.documentConverter, indices, customizers, enableLogging, bulkLoadingRestoreListener, maxCacheEntries);
+        } else {
+            store = new NitriteDocumentStore(this.name, this.keySerde, this.valueSerde, this.keyFieldName, this.documentConverter, indices, customizers, enableLogging, bulkLoadingRestoreListener, patchSnapshotInterval, coalesceChangelog);
+        }
+        store.logSlowQueriesTo(slowQueryLog);
+        compoundIndices.forEach((fields) -> store.addCompoundIndex(new CompoundIndex(fields)));
+        if (indexAdvisorScanThreshold > 0) {
+            store.adviseIndicesWith(new IndexAdvisor(indexAdvisorScanThreshold, createAdvisedIndices));
+        }
+        return store;
     }
 
     @Override
@@ -0,0 +1,120 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.Sensor.RecordingLevel;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.streams.processor.StateStoreContext;
+import org.apache.kafka.streams.processor.internals.metrics.StreamsMetricsImpl;
+import org.apache.kafka.streams.state.internals.metrics.StateStoreMetrics;
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVStore;
+
+import static org.apache.kafka.streams.processor.internals.metrics.StreamsMetricsImpl.STATE_STORE_LEVEL_GROUP;
+import static org.apache.kafka.streams.processor.internals.metrics.StreamsMetricsImpl.addAvgAndMaxToSensor;
+import static org.apache.kafka.streams.processor.internals.metrics.StreamsMetricsImpl.addInvocationRateToSensor;
+import static org.apache.kafka.streams.processor.internals.metrics.StreamsMetricsImpl.addRateOfSumAndSumMetricsToSensor;
+
+/**
+ * The sensors of a Nitrite document store, registered at the store level of the Kafka Streams metrics, so they are
+ * exported through the configured metrics reporters like the metrics of the built-in stores. The operations are
+ * recorded at the {@code DEBUG} recording level, like the operations of the built-in stores, while the size of the
+ * store file and the hit ratio of its page cache are reported at the {@code INFO} level.
+ */
+final class NitriteStoreMetrics {
+
+    static final String METRICS_SCOPE = "nitrite";
+
+    private final StreamsMetricsImpl streamsMetrics;
+    private final String taskId;
+    private final String storeName;
+    private final Time time = Time.SYSTEM;
+
+    final Sensor putSensor;
+    final Sensor putIfAbsentSensor;
+    final Sensor putAllSensor;
+    final Sensor getSensor;
+    final Sensor deleteSensor;
+    final Sensor flushSensor;
+    final Sensor findSensor;
+    private final Sensor restoreSensor;
+    private final Sensor restoredRecordsSensor;
+    private final Sensor scannedSensor;
+    private final Sensor returnedSensor;
+
+    NitriteStoreMetrics(StateStoreContext context, NitriteDocumentStore<?, ?> store) {
+        this.streamsMetrics = (StreamsMetricsImpl) context.metrics();
+        this.taskId = context.taskId().toString();
+        this.storeName = store.name();
+
+        putSensor = StateStoreMetrics.putSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        putIfAbsentSensor = StateStoreMetrics.putIfAbsentSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        putAllSensor = StateStoreMetrics.putAllSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        getSensor = StateStoreMetrics.getSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        deleteSensor = StateStoreMetrics.deleteSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        flushSensor = StateStoreMetrics.flushSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        restoreSensor = StateStoreMetrics.restoreSensor(taskId, METRICS_SCOPE, storeName, streamsMetrics);
+        findSensor = throughputAndLatencySensor("find", "calls to find");
+
+        restoredRecordsSensor = sumSensor("records-restored", "changelog records restored");
+        scannedSensor = sumSensor("documents-scanned", "entries read by queries to evaluate their filters and sort their results");
+        returnedSensor = sumSensor("documents-returned", "documents returned by queries");
+
+        streamsMetrics.addStoreLevelMutableMetric(taskId, METRICS_SCOPE, storeName, "file-size-bytes",
+                "The size of the store file in bytes", RecordingLevel.INFO, (config, now) -> fileSize(store));
+        streamsMetrics.addStoreLevelMutableMetric(taskId, METRICS_SCOPE, storeName, "cache-hit-ratio",
+                "The ratio of page reads served from the page cache", RecordingLevel.INFO, (config, now) -> cacheHitRatio(store));
+    }
+
+    <T> T measure(Sensor sensor, Supplier<T> action) {
+        return StreamsMetricsImpl.maybeMeasureLatency(action, time, sensor);
+    }
+
+    void measure(Sensor sensor, Runnable action) {
+        StreamsMetricsImpl.maybeMeasureLatency(action, time, sensor);
+    }
+
+    void recordRestore(int records, long startNanos) {
+        restoreSensor.record((double) (System.nanoTime() - startNanos), time.milliseconds());
+        restoredRecordsSensor.record(records);
+    }
+
+    void recordQuery(long scanned, long returned) {
+        scannedSensor.record(scanned);
+        returnedSensor.record(returned);
+    }
+
+    void remove() {
+        streamsMetrics.removeAllStoreLevelSensorsAndMetrics(taskId, storeName);
+    }
+
+    private Sensor throughputAndLatencySensor(String operation, String description) {
+        Map<String, String> tags = streamsMetrics.storeLevelTagMap(taskId, METRICS_SCOPE, storeName);
+        Sensor sensor = streamsMetrics.storeLevelSensor(taskId, storeName, operation, RecordingLevel.DEBUG);
+        addInvocationRateToSensor(sensor, STATE_STORE_LEVEL_GROUP, tags, operation, "The average number of " + description + " per second");
+        addAvgAndMaxToSensor(sensor, STATE_STORE_LEVEL_GROUP, tags, operation + "-latency",
+                "The average latency of " + description, "The maximum latency of " + description);
+        return sensor;
+    }
+
+    private Sensor sumSensor(String name, String description) {
+        Map<String, String> tags = streamsMetrics.storeLevelTagMap(taskId, METRICS_SCOPE, storeName);
+        Sensor sensor = streamsMetrics.storeLevelSensor(taskId, storeName, name, RecordingLevel.DEBUG);
+        addRateOfSumAndSumMetricsToSensor(sensor, STATE_STORE_LEVEL_GROUP, tags, name,
+                "The average number of " + description + " per second", "The total number of " + description);
+        return sensor;
+    }
+
+    private static long fileSize(NitriteDocumentStore<?, ?> store) {
+        MVStore mvStore = store.mvStore();
+        FileStore fileStore = mvStore == null ? null : mvStore.getFileStore();
+        return fileStore == null ? 0L : fileStore.size();
+    }
+
+    private static double cacheHitRatio(NitriteDocumentStore<?, ?> store) {
+        MVStore mvStore = store.mvStore();
+        return mvStore == null ? 0.0 : mvStore.getCacheHitRatio() / 100.0;
+    }
+}
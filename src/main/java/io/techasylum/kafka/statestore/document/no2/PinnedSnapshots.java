@@ -0,0 +1,99 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.dizitart.no2.internals.DocumentSnapshot;
+
+/**
+ * The snapshots of a store pinned for queries spanning several calls, by id. Every snapshot keeps the pages of its
+ * version in the file, so they are only kept while they are being used: a snapshot expires when it has not been used
+ * for the time to live, and the least recently used snapshot is dropped when too many are pinned. Dropped snapshots
+ * are closed, they stay open for the queries still reading them.
+ */
+final class PinnedSnapshots {
+
+    static final int DEFAULT_MAX_PINNED = 32;
+    static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    private final int maxPinned;
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<Long, Pinned> pinned = new LinkedHashMap<>(16, 0.75f, true);
+
+    PinnedSnapshots() {
+        this(DEFAULT_MAX_PINNED, DEFAULT_TIME_TO_LIVE);
+    }
+
+    PinnedSnapshots(int maxPinned, Duration timeToLive) {
+        this.maxPinned = maxPinned;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Keeps using a pinned snapshot, or pins a new one if it expired or no snapshot was requested.
+     *
+     * @param requested the id of the snapshot to keep using, can be {@code null}
+     * @param snapshots takes a new snapshot
+     * @return the id of the pinned snapshot
+     */
+    synchronized long pin(Long requested, Supplier<DocumentSnapshot> snapshots) {
+        long now = System.nanoTime();
+        expire(now);
+        if (requested != null && touch(requested, now) != null) {
+            return requested;
+        }
+
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (pinned.containsKey(id));
+        pinned.put(id, new Pinned(snapshots.get(), now));
+        if (pinned.size() > maxPinned) {
+            pinned.remove(pinned.keySet().iterator().next()).snapshot.close();
+        }
+        return id;
+    }
+
+    /**
+     * @param id the id of the snapshot
+     * @return the snapshot, retained for the caller which has to close it, or {@code null} if it is no longer pinned
+     */
+    synchronized DocumentSnapshot get(long id) {
+        long now = System.nanoTime();
+        expire(now);
+        DocumentSnapshot snapshot = touch(id, now);
+        return snapshot == null ? null : snapshot.retain();
+    }
+
+    synchronized void clear() {
+        pinned.values().forEach((snapshot) -> snapshot.snapshot.close());
+        pinned.clear();
+    }
+
+    private DocumentSnapshot touch(long id, long now) {
+        Pinned snapshot = pinned.get(id);
+        if (snapshot == null) {
+            return null;
+        }
+        pinned.put(id, new Pinned(snapshot.snapshot, now));
+        return snapshot.snapshot;
+    }
+
+    private void expire(long now) {
+        // ordered from least to most recently used
+        Iterator<Pinned> iterator = pinned.values().iterator();
+        while (iterator.hasNext()) {
+            Pinned next = iterator.next();
+            if (now - next.lastUsed <= timeToLiveNanos) {
+                break;
+            }
+            iterator.remove();
+            next.snapshot.close();
+        }
+    }
+
+    private record Pinned(DocumentSnapshot snapshot, long lastUsed) { }
+}
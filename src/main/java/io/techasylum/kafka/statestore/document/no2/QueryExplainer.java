@@ -0,0 +1,112 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.techasylum.kafka.statestore.document.QueryPlan;
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.filters.FilterNodes;
+import org.dizitart.no2.internals.DocumentSnapshot;
+
+import static org.dizitart.no2.util.StringUtils.isNullOrEmpty;
+
+/**
+ * Explains queries by executing them against a snapshot, one node of the filter at a time, counting the entries each
+ * node reads. Nitrite evaluates the filters combined by {@code and} and {@code or} concurrently, while they are
+ * evaluated one after another here, so the time of a combining node is the sum of the times of its nodes.
+ * <p>
+ * When a compound index covers predicates of the filter, the filter is evaluated against the documents the index
+ * selects, which is explained by a {@code compound} step ahead of the filter step.
+ */
+final class QueryExplainer {
+
+    private QueryExplainer() {
+    }
+
+    static QueryPlan explain(DocumentSnapshot snapshot, CompoundIndex.Lookup lookup, Filter filter, FindOptions findOptions) {
+        long start = System.nanoTime();
+
+        List<QueryPlan> steps = new ArrayList<>(3);
+        DocumentSnapshot searched = snapshot;
+        if (lookup != null) {
+            Set<NitriteId> candidates = lookup.find();
+            searched = snapshot.restrictedTo(candidates);
+            steps.add(new QueryPlan("compound", lookup.fields(), true, 0, candidates.size(), elapsed(start), List.of()));
+        }
+
+        Explained filtered;
+        if (filter == null) {
+            Set<NitriteId> matches = snapshot.find(null);
+            filtered = new Explained(new QueryPlan("all", null, false, 0, matches.size(), elapsed(start), List.of()), matches);
+        } else {
+            filtered = explain(searched, lookup, filter);
+        }
+
+        long pageStart = System.nanoTime();
+        LongAdder reads = new LongAdder();
+        Set<NitriteId> page = NitriteDocumentStore.findPage(filtered.matches, snapshot.countingReads(reads), findOptions);
+        String sortField = isNullOrEmpty(findOptions.getField()) ? null : findOptions.getField();
+        QueryPlan paged = new QueryPlan(sortField == null ? "page" : "sort", sortField, false, reads.sum(), page.size(), elapsed(pageStart), List.of());
+
+        steps.add(filtered.plan);
+        steps.add(paged);
+        return new QueryPlan("find", null, filtered.plan.indexed(), filtered.plan.scanned() + paged.scanned(), page.size(),
+                elapsed(start), steps);
+    }
+
+    private static Explained explain(DocumentSnapshot snapshot, CompoundIndex.Lookup lookup, Filter filter) {
+        long start = System.nanoTime();
+        List<Filter> children = FilterNodes.children(filter);
+        if (children.isEmpty()) {
+            LongAdder reads = new LongAdder();
+            Set<NitriteId> matches = snapshot.countingReads(reads).find(filter);
+            String field = FilterNodes.field(filter);
+            boolean indexed = snapshot.usesIndex(filter) || (lookup != null && lookup.covers(filter));
+            return new Explained(new QueryPlan(FilterNodes.operator(filter), field, indexed, reads.sum(),
+                    matches.size(), elapsed(start), List.of()), matches);
+        }
+
+        List<QueryPlan> steps = new ArrayList<>(children.size());
+        Set<NitriteId> matches = null;
+        long scanned = 0;
+        boolean indexed = true;
+        for (Filter child : children) {
+            Explained explained = explain(snapshot, FilterNodes.isAnd(filter) ? lookup : null, child);
+            steps.add(explained.plan);
+            scanned += explained.plan.scanned();
+            indexed &= explained.plan.indexed();
+
+            if (matches == null) {
+                matches = new LinkedHashSet<>(explained.matches);
+            } else if (FilterNodes.isAnd(filter)) {
+                matches.retainAll(explained.matches);
+            } else {
+                matches.addAll(explained.matches);
+            }
+        }
+
+        if (FilterNodes.isNot(filter)) {
+            // the complement is taken over the ids of all documents
+            LongAdder reads = new LongAdder();
+            Set<NitriteId> complement = new LinkedHashSet<>(snapshot.countingReads(reads).keySet());
+            complement.removeAll(matches);
+            matches = complement;
+            scanned += reads.sum();
+            indexed = false;
+        }
+
+        return new Explained(new QueryPlan(FilterNodes.operator(filter), null, indexed, scanned, matches.size(), elapsed(start), steps), matches);
+    }
+
+    private static Duration elapsed(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private record Explained(QueryPlan plan, Set<NitriteId> matches) { }
+}
@@ -0,0 +1,119 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.dizitart.no2.Cursor;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.Lookup;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.RecordIterable;
+import org.dizitart.no2.exceptions.InvalidOperationException;
+import org.dizitart.no2.internals.DocumentSnapshot;
+import org.dizitart.no2.util.Iterables;
+import org.jetbrains.annotations.NotNull;
+
+import static org.dizitart.no2.exceptions.ErrorMessage.REMOVE_ON_DOCUMENT_ITERATOR_NOT_SUPPORTED;
+
+/**
+ * A {@link Cursor} over a result set computed by the store itself rather than by Nitrite, resolving the documents
+ * by id in the snapshot the result set was computed on while iterating. The cursor holds the snapshot until it has
+ * been iterated to the end or is closed, it can't be iterated again afterwards.
+ */
+final class ResultSetCursor implements Cursor, AutoCloseable {
+
+	private final Set<NitriteId> resultSet;
+	private final DocumentSnapshot snapshot;
+	private final boolean hasMore;
+	private final int totalCount;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	ResultSetCursor(Set<NitriteId> resultSet, DocumentSnapshot snapshot, boolean hasMore, int totalCount) {
+		this.resultSet = resultSet;
+		this.snapshot = snapshot;
+		this.hasMore = hasMore;
+		this.totalCount = totalCount;
+	}
+
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			snapshot.close();
+		}
+	}
+
+	@Override
+	public RecordIterable<Document> project(Document projection) {
+		throw new UnsupportedOperationException("Projections not yet supported");
+	}
+
+	@Override
+	public RecordIterable<Document> join(Cursor foreignCursor, Lookup lookup) {
+		throw new UnsupportedOperationException("Joins not yet supported");
+	}
+
+	@Override
+	public Set<NitriteId> idSet() {
+		return resultSet;
+	}
+
+	@Override
+	public boolean hasMore() {
+		return hasMore;
+	}
+
+	@Override
+	public int size() {
+		return resultSet.size();
+	}
+
+	@Override
+	public int totalCount() {
+		return totalCount;
+	}
+
+	@Override
+	public Document firstOrDefault() {
+		return Iterables.firstOrDefault(this);
+	}
+
+	@Override
+	public List<Document> toList() {
+		return Iterables.toList(this);
+	}
+
+	@NotNull
+	@Override
+	public Iterator<Document> iterator() {
+		if (closed.get() && !resultSet.isEmpty()) {
+			throw new IllegalStateException("The cursor is closed, its documents were released once they were read");
+		}
+		Iterator<NitriteId> ids = resultSet.iterator();
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				boolean hasNext = ids.hasNext();
+				if (!hasNext) {
+					close();
+				}
+				return hasNext;
+			}
+
+			@Override
+			public Document next() {
+				Document document = snapshot.get(ids.next());
+				if (document != null) {
+					return new Document(document);
+				}
+				return null;
+			}
+
+			@Override
+			public void remove() {
+				throw new InvalidOperationException(REMOVE_ON_DOCUMENT_ITERATOR_NOT_SUPPORTED);
+			}
+		};
+	}
+}
@@ -0,0 +1,60 @@
+package io.techasylum.kafka.statestore.document.no2;
+
+import java.text.Collator;
+import java.util.Comparator;
+
+import org.dizitart.no2.Document;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.NullOrder;
+import org.dizitart.no2.SortOrder;
+import org.dizitart.no2.exceptions.InvalidOperationException;
+
+import static org.dizitart.no2.exceptions.ErrorMessage.UNABLE_TO_SORT_ON_ARRAY;
+import static org.dizitart.no2.util.DocumentUtils.getFieldValue;
+
+/**
+ * Comparators ordering the values of a sort field the same way Nitrite orders documents for a {@link FindOptions}.
+ */
+public final class SortComparators {
+
+    private SortComparators() {
+    }
+
+    /**
+     * Creates a comparator for the values of the sort field, taking the collator, the sort order and the placement of
+     * {@code null} values of the options into account.
+     *
+     * @param findOptions the options holding the sorting criteria
+     * @return the comparator
+     */
+    @SuppressWarnings("unchecked")
+    public static Comparator<Object> sortValueComparator(FindOptions findOptions) {
+        Collator collator = findOptions.getCollator();
+        Comparator<Object> valueComparator = collator != null ? collator : (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
+        boolean ascending = findOptions.getSortOrder() == SortOrder.Ascending;
+        boolean nullsFirst = ascending
+                ? findOptions.getNullOrder() == NullOrder.Default || findOptions.getNullOrder() == NullOrder.First
+                : findOptions.getNullOrder() == NullOrder.First;
+        if (!ascending) {
+            valueComparator = valueComparator.reversed();
+        }
+        return nullsFirst ? Comparator.nullsFirst(valueComparator) : Comparator.nullsLast(valueComparator);
+    }
+
+    /**
+     * Gets the value of the sort field of a document.
+     *
+     * @param document the document
+     * @param sortField the sort field
+     * @return the value, can be {@code null}
+     * @throws InvalidOperationException if the value is an array or iterable, which can not be sorted on
+     */
+    public static Object sortValue(Document document, String sortField) {
+        Object value = getFieldValue(document, sortField);
+        if (value != null && (value.getClass().isArray() || value instanceof Iterable)) {
+            throw new InvalidOperationException(UNABLE_TO_SORT_ON_ARRAY);
+        }
+        return value;
+    }
+}
@@ -8,6 +8,8 @@
 package io.techasylum.kafka.statestore.document.serialization;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serializer;
@@ -17,14 +19,45 @@ public class DocumentSerde<Doc extends Document> implements Serde<Doc> {
 
 	private final Serializer<Doc> serializer;
 	private final Deserializer<Doc> deserializer;
+	private final Deserializer<Document> documentDeserializer;
 
 	public DocumentSerde(Class<Doc> clazz, ObjectMapper objectMapper) {
-		this(new DocumentSerializer<>(objectMapper), new DocumentDeserializer<>(clazz, objectMapper));
+		this(new DocumentSerializer<>(objectMapper), new DocumentDeserializer<>(clazz, objectMapper), new DocumentDeserializer<>(Document.class, objectMapper));
 	}
 
 	public DocumentSerde(Serializer<Doc> serializer, Deserializer<Doc> deserializer) {
+		this(serializer, deserializer, null);
+	}
+
+	/**
+	 * @param serializer the serializer, which has to accept any {@link Document} if a documentDeserializer is given
+	 * @param deserializer the deserializer
+	 * @param documentDeserializer the deserializer reading the same format into plain documents, can be {@code null}
+	 */
+	public DocumentSerde(Serializer<Doc> serializer, Deserializer<Doc> deserializer, Deserializer<Document> documentDeserializer) {
 		this.serializer = serializer;
 		this.deserializer = deserializer;
+		this.documentDeserializer = documentDeserializer;
+	}
+
+	/**
+	 * Creates a serde writing documents in Smile, the binary format of Jackson, which is considerably smaller and faster
+	 * to parse than JSON. Values written in JSON are still read, so existing changelogs can be restored after switching.
+	 *
+	 * @param clazz the document type
+	 * @param smileMapper the mapper writing and reading Smile, for example {@code new ObjectMapper(new SmileFactory())}
+	 *                    with the same modules and features as {@code jsonMapper}
+	 * @param jsonMapper the mapper reading values written in JSON
+	 * @return the serde
+	 * @throws IllegalArgumentException if {@code smileMapper} does not write Smile with headers
+	 */
+	public static <Doc extends Document> DocumentSerde<Doc> smile(Class<Doc> clazz, ObjectMapper smileMapper, ObjectMapper jsonMapper) {
+		if (!(smileMapper.getFactory() instanceof SmileFactory smileFactory) || !smileFactory.isEnabled(SmileGenerator.Feature.WRITE_HEADER)) {
+			throw new IllegalArgumentException("smileMapper must write Smile with headers");
+		}
+		return new DocumentSerde<>(new DocumentSerializer<>(smileMapper),
+				new FormatDetectingDocumentDeserializer<>(new DocumentDeserializer<>(clazz, smileMapper), new DocumentDeserializer<>(clazz, jsonMapper)),
+				new FormatDetectingDocumentDeserializer<>(new DocumentDeserializer<>(Document.class, smileMapper), new DocumentDeserializer<>(Document.class, jsonMapper)));
 	}
 
 	@Override
@@ -37,4 +70,14 @@ public class DocumentSerde<Doc extends Document> implements Serde<Doc> {
 		return deserializer;
 	}
 
+	/**
+	 * Gets a deserializer reading values written by {@link #serializer()} into plain documents, regardless of the
+	 * document type of the serde. Used to read partial documents, such as the patch records of a changelog.
+	 *
+	 * @return the deserializer or {@code null} if the serde can not read plain documents
+	 */
+	public Deserializer<Document> documentDeserializer() {
+		return documentDeserializer;
+	}
+
 }
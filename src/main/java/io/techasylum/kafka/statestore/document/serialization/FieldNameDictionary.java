@@ -0,0 +1,239 @@
+package io.techasylum.kafka.statestore.document.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Assigns small integer ids to the field names of the documents of a store, so serialized documents don't have to
+ * repeat the names in full. Ids are assigned in order and never reused.
+ * <p>
+ * The dictionary is carried in the changelog of the store as chunk records, each holding the names of a fixed range of
+ * {@link #CHUNK_IDS} ids. A chunk is logged again whenever names are added to its range, right before the first value
+ * using one of them, under a key made of the first id of the range, so compaction keeps a single record per range.
+ * Their keys start with {@link #CHUNK_KEY_PREFIX}, which must not be the start of any serialized key of the store.
+ */
+public final class FieldNameDictionary {
+
+	public static final int DEFAULT_MAX_SIZE = 4096;
+	public static final int CHUNK_IDS = 64;
+
+	static final byte[] CHUNK_KEY_PREFIX = {0, 0, 'n', 'o', '2', 'd', 'i', 'c', 't'};
+	private static final byte CHUNK_VERSION = 1;
+
+	private final int maxSize;
+	private final Map<String, Integer> ids = new HashMap<>();
+	private volatile String[] names = new String[0];
+	private boolean changed;
+
+	public FieldNameDictionary() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize the maximum number of field names to assign ids to, any further names are serialized in full so
+	 *                documents with maps of arbitrary keys don't grow the dictionary unbounded
+	 */
+	public FieldNameDictionary(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Gets the id of a field name, assigning the next id if the name does not have one yet.
+	 *
+	 * @param name the field name
+	 * @return the id or {@code -1} if the dictionary is full
+	 */
+	public synchronized int idOf(String name) {
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		if (names.length >= maxSize) {
+			return -1;
+		}
+		set(names.length, name);
+		return names.length - 1;
+	}
+
+	/**
+	 * Gets the field name of an id.
+	 *
+	 * @param id the id
+	 * @return the field name
+	 * @throws SerializationException if the id has not been assigned
+	 */
+	public String nameOf(int id) {
+		String[] names = this.names;
+		if (id < 0 || id >= names.length || names[id] == null) {
+			throw new SerializationException("Unknown field name id " + id);
+		}
+		return names[id];
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	private void set(int id, String name) {
+		String[] current = this.names;
+		String previous = id < current.length ? current[id] : null;
+		if (name.equals(previous)) {
+			return;
+		}
+		if (previous != null) {
+			throw new SerializationException("Field name id " + id + " is assigned to " + previous + ", not " + name);
+		}
+		Integer assigned = ids.get(name);
+		if (assigned != null) {
+			throw new SerializationException("Field name " + name + " is assigned id " + assigned + ", not " + id);
+		}
+		String[] updated = Arrays.copyOf(current, Math.max(current.length, id + 1));
+		updated[id] = name;
+		ids.put(name, id);
+		this.names = updated;
+		changed = true;
+	}
+
+// == Changelog =======================================================================================================
+
+	public static boolean isChunkKey(byte[] key) {
+		if (key == null || key.length < CHUNK_KEY_PREFIX.length) {
+			return false;
+		}
+		return Arrays.equals(key, 0, CHUNK_KEY_PREFIX.length, CHUNK_KEY_PREFIX, 0, CHUNK_KEY_PREFIX.length);
+	}
+
+	/**
+	 * @param id an id
+	 * @return the first id of the chunk holding the id
+	 */
+	public static int chunkStart(int id) {
+		return id - id % CHUNK_IDS;
+	}
+
+	/**
+	 * Creates the changelog key of a chunk.
+	 *
+	 * @param start the first id of the chunk
+	 * @return the key
+	 */
+	public static byte[] chunkKey(int start) {
+		return ByteBuffer.allocate(CHUNK_KEY_PREFIX.length + Integer.BYTES)
+				.put(CHUNK_KEY_PREFIX)
+				.putInt(start)
+				.array();
+	}
+
+	/**
+	 * Encodes the names of the ids of a chunk assigned so far.
+	 *
+	 * @param start the first id of the chunk
+	 * @return the changelog value of the chunk
+	 */
+	public byte[] encodeChunk(int start) {
+		String[] names = this.names;
+		int end = Math.min(names.length, start + CHUNK_IDS);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(CHUNK_VERSION);
+			out.writeInt(start);
+			out.writeInt(end - start);
+			for (int id = start; id < end; id++) {
+				out.writeUTF(names[id]);
+			}
+		} catch (IOException ex) {
+			throw new SerializationException("Could not encode field names", ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Applies a chunk read from the changelog.
+	 *
+	 * @param chunk the changelog value of the chunk
+	 * @throws SerializationException if the chunk assigns a name or id differently than the dictionary
+	 */
+	public synchronized void applyChunk(byte[] chunk) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(chunk))) {
+			byte version = in.readByte();
+			if (version != CHUNK_VERSION) {
+				throw new SerializationException("Unsupported field name chunk version " + version);
+			}
+			int start = in.readInt();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				set(start + i, in.readUTF());
+			}
+		} catch (IOException ex) {
+			throw new SerializationException("Could not decode field names", ex);
+		}
+	}
+
+// == State Directory =================================================================================================
+
+	/**
+	 * Loads the dictionary saved by {@link #save(Path)}, if there is one.
+	 *
+	 * @param file the file in the state directory of the store
+	 * @throws IOException if the file can not be read
+	 */
+	public synchronized void load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			int count = in.readInt();
+			List<String> loaded = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				loaded.add(in.readUTF());
+			}
+			for (int id = 0; id < loaded.size(); id++) {
+				set(id, loaded.get(id));
+			}
+		}
+		changed = false;
+	}
+
+	/**
+	 * Saves the dictionary if it changed since it was last loaded or saved.
+	 *
+	 * @param file the file in the state directory of the store
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void save(Path file) throws IOException {
+		if (!changed) {
+			return;
+		}
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+			String[] names = this.names;
+			int count = 0;
+			while (count < names.length && names[count] != null) {
+				count++;
+			}
+			out.writeInt(count);
+			for (int id = 0; id < count; id++) {
+				out.writeUTF(names[id]);
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		changed = false;
+	}
+}
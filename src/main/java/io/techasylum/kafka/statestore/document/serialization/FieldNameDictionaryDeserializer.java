@@ -0,0 +1,136 @@
+package io.techasylum.kafka.statestore.document.serialization;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.dizitart.no2.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.FORMAT_MAGIC;
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.FORMAT_VERSION;
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.LITERAL_NAME_PREFIX;
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.SMILE_FACTORY;
+
+/**
+ * Deserializes documents with dictionary encoded field names, falling back to Smile and JSON for values written
+ * before the dictionary was enabled.
+ */
+class FieldNameDictionaryDeserializer<Doc extends Document> implements Deserializer<Doc> {
+
+	private static final Logger logger = LoggerFactory.getLogger(FieldNameDictionaryDeserializer.class);
+
+	private final Class<Doc> clazz;
+	private final ObjectMapper objectMapper;
+	private final FieldNameDictionary dictionary;
+
+	FieldNameDictionaryDeserializer(Class<Doc> clazz, ObjectMapper objectMapper, FieldNameDictionary dictionary) {
+		this.clazz = clazz;
+		this.objectMapper = objectMapper;
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public Doc deserialize(String topic, byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		try {
+			if (data.length >= 2 && data[0] == FORMAT_MAGIC) {
+				if (data[1] != FORMAT_VERSION) {
+					throw new SerializationException("Unsupported document format version " + data[1]);
+				}
+				try (JsonParser parser = new FieldNameDecodingParser(SMILE_FACTORY.createParser(data, 2, data.length - 2))) {
+					parser.setCodec(objectMapper);
+					return objectMapper.readValue(parser, clazz);
+				}
+			}
+			if (FormatDetectingDocumentDeserializer.isSmile(data)) {
+				try (JsonParser parser = SMILE_FACTORY.createParser(data)) {
+					parser.setCodec(objectMapper);
+					return objectMapper.readValue(parser, clazz);
+				}
+			}
+			return objectMapper.readValue(data, clazz);
+		}
+		catch (IOException ex) {
+			logger.error("Could not deserialize document.", ex);
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private class FieldNameDecodingParser extends JsonParserDelegate {
+
+		FieldNameDecodingParser(JsonParser delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public String currentName() throws IOException {
+			return decode(delegate.currentName());
+		}
+
+		@Override
+		public String getCurrentName() throws IOException {
+			return decode(delegate.getCurrentName());
+		}
+
+		@Override
+		public String getText() throws IOException {
+			if (delegate.currentToken() == JsonToken.FIELD_NAME) {
+				return currentName();
+			}
+			return delegate.getText();
+		}
+
+		@Override
+		public boolean hasTextCharacters() {
+			return delegate.currentToken() != JsonToken.FIELD_NAME && delegate.hasTextCharacters();
+		}
+
+		@Override
+		public char[] getTextCharacters() throws IOException {
+			if (delegate.currentToken() == JsonToken.FIELD_NAME) {
+				return currentName().toCharArray();
+			}
+			return delegate.getTextCharacters();
+		}
+
+		@Override
+		public int getTextLength() throws IOException {
+			if (delegate.currentToken() == JsonToken.FIELD_NAME) {
+				return currentName().length();
+			}
+			return delegate.getTextLength();
+		}
+
+		@Override
+		public int getTextOffset() throws IOException {
+			if (delegate.currentToken() == JsonToken.FIELD_NAME) {
+				return 0;
+			}
+			return delegate.getTextOffset();
+		}
+
+		private String decode(String encoded) {
+			if (encoded == null) {
+				return null;
+			}
+			if (encoded.startsWith(LITERAL_NAME_PREFIX)) {
+				return encoded.substring(LITERAL_NAME_PREFIX.length());
+			}
+			try {
+				return dictionary.nameOf(Integer.parseInt(encoded, Character.MAX_RADIX));
+			}
+			catch (NumberFormatException ex) {
+				throw new SerializationException("Invalid field name id " + encoded, ex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package io.techasylum.kafka.statestore.document.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import org.dizitart.no2.Document;
+
+/**
+ * A {@link DocumentSerde} writing documents in Smile with their field names replaced by the ids of a
+ * {@link FieldNameDictionary}. Values written in JSON or Smile are still read.
+ * <p>
+ * A Nitrite document store using this serde binds it to a dictionary of its own with {@link #withDictionary}, which it
+ * carries in its changelog and saves in its state directory. Used on its own, the serde encodes with a dictionary which
+ * only lives in memory.
+ */
+public class FieldNameDictionarySerde<Doc extends Document> extends DocumentSerde<Doc> {
+
+	static final byte FORMAT_MAGIC = 0;
+	static final byte FORMAT_VERSION = 1;
+	static final String LITERAL_NAME_PREFIX = "~";
+	static final SmileFactory SMILE_FACTORY = SmileFactory.builder()
+			.disable(SmileGenerator.Feature.WRITE_HEADER)
+			.disable(SmileParser.Feature.REQUIRE_HEADER)
+			.build();
+
+	private final Class<Doc> clazz;
+	private final ObjectMapper objectMapper;
+	private final int maxDictionarySize;
+
+	public FieldNameDictionarySerde(Class<Doc> clazz, ObjectMapper objectMapper) {
+		this(clazz, objectMapper, FieldNameDictionary.DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param clazz the document type
+	 * @param objectMapper the mapper to convert documents with, its modules and features apply as they do for JSON
+	 * @param maxDictionarySize the maximum number of field names in the dictionary of a store
+	 */
+	public FieldNameDictionarySerde(Class<Doc> clazz, ObjectMapper objectMapper, int maxDictionarySize) {
+		this(clazz, objectMapper, maxDictionarySize, new FieldNameDictionary(maxDictionarySize));
+	}
+
+	private FieldNameDictionarySerde(Class<Doc> clazz, ObjectMapper objectMapper, int maxDictionarySize, FieldNameDictionary dictionary) {
+		super(new FieldNameDictionarySerializer<>(objectMapper, dictionary), new FieldNameDictionaryDeserializer<>(clazz, objectMapper, dictionary),
+				new FieldNameDictionaryDeserializer<>(Document.class, objectMapper, dictionary));
+		this.clazz = clazz;
+		this.objectMapper = objectMapper;
+		this.maxDictionarySize = maxDictionarySize;
+	}
+
+	/**
+	 * @return a new dictionary for a store using this serde
+	 */
+	public FieldNameDictionary newDictionary() {
+		return new FieldNameDictionary(maxDictionarySize);
+	}
+
+	/**
+	 * Creates a serde with the same settings encoding with the given dictionary.
+	 *
+	 * @param dictionary the dictionary of the store
+	 * @return the serde
+	 */
+	public FieldNameDictionarySerde<Doc> withDictionary(FieldNameDictionary dictionary) {
+		return new FieldNameDictionarySerde<>(clazz, objectMapper, maxDictionarySize, dictionary);
+	}
+
+}
@@ -0,0 +1,84 @@
+package io.techasylum.kafka.statestore.document.serialization;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.serialization.Serializer;
+import org.dizitart.no2.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.FORMAT_MAGIC;
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.FORMAT_VERSION;
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.LITERAL_NAME_PREFIX;
+import static io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde.SMILE_FACTORY;
+
+class FieldNameDictionarySerializer<Doc extends Document> implements Serializer<Doc> {
+
+	private static final Logger logger = LoggerFactory.getLogger(FieldNameDictionarySerializer.class);
+
+	/**
+	 * A buffer reused by the serializations of a thread, dropped once it held a document larger than this.
+	 */
+	private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+	private static final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(ByteArrayBuilder::new);
+
+	private final ObjectMapper objectMapper;
+	private final FieldNameDictionary dictionary;
+
+	FieldNameDictionarySerializer(ObjectMapper objectMapper, FieldNameDictionary dictionary) {
+		this.objectMapper = objectMapper;
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public byte[] serialize(String topic, Doc data) {
+		if (data == null) {
+			return null;
+		}
+		ByteArrayBuilder bytes = buffers.get();
+		bytes.reset();
+		try {
+			bytes.write(FORMAT_MAGIC);
+			bytes.write(FORMAT_VERSION);
+			try (JsonGenerator generator = new FieldNameEncodingGenerator(SMILE_FACTORY.createGenerator(bytes))) {
+				generator.setCodec(objectMapper);
+				objectMapper.writeValue(generator, data);
+			}
+			return bytes.toByteArray();
+		}
+		catch (IOException ex) {
+			logger.error("Could not serialize document.", ex);
+			throw new RuntimeException(ex);
+		}
+		finally {
+			if (bytes.getCurrentSegment().length > MAX_RETAINED_BUFFER) {
+				buffers.remove();
+			}
+		}
+	}
+
+	private class FieldNameEncodingGenerator extends JsonGeneratorDelegate {
+
+		FieldNameEncodingGenerator(JsonGenerator delegate) {
+			super(delegate, false);
+		}
+
+		@Override
+		public void writeFieldName(String name) throws IOException {
+			int id = dictionary.idOf(name);
+			delegate.writeFieldName(id < 0 ? LITERAL_NAME_PREFIX + name : Integer.toString(id, Character.MAX_RADIX));
+		}
+
+		@Override
+		public void writeFieldName(SerializableString name) throws IOException {
+			writeFieldName(name.getValue());
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package io.techasylum.kafka.statestore.document.serialization;
+
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.dizitart.no2.Document;
+
+/**
+ * Deserializes documents written in Smile, recognized by the header Smile prepends to every value, and falls back to
+ * JSON for all other values, so changelogs written before switching to Smile can still be restored.
+ */
+class FormatDetectingDocumentDeserializer<Doc extends Document> implements Deserializer<Doc> {
+
+	private final Deserializer<Doc> smileDeserializer;
+	private final Deserializer<Doc> jsonDeserializer;
+
+	FormatDetectingDocumentDeserializer(Deserializer<Doc> smileDeserializer, Deserializer<Doc> jsonDeserializer) {
+		this.smileDeserializer = smileDeserializer;
+		this.jsonDeserializer = jsonDeserializer;
+	}
+
+	@Override
+	public Doc deserialize(String topic, byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		if (isSmile(data)) {
+			return smileDeserializer.deserialize(topic, data);
+		}
+		return jsonDeserializer.deserialize(topic, data);
+	}
+
+	static boolean isSmile(byte[] data) {
+		return data.length >= 3
+				&& data[0] == SmileConstants.HEADER_BYTE_1
+				&& data[1] == SmileConstants.HEADER_BYTE_2
+				&& data[2] == SmileConstants.HEADER_BYTE_3;
+	}
+
+}
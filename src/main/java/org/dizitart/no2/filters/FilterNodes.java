@@ -0,0 +1,165 @@
+package org.dizitart.no2.filters;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.internals.NitriteService;
+
+/**
+ * Takes filters apart into the nodes of their tree, which Nitrite keeps to its package-private filter classes.
+ */
+public final class FilterNodes {
+
+    private static final Map<String, String> OPERATORS = Map.ofEntries(
+            Map.entry("Equals", "eq"),
+            Map.entry("GreaterThan", "gt"),
+            Map.entry("GreaterEqual", "gte"),
+            Map.entry("LesserThan", "lt"),
+            Map.entry("LesserEqual", "lte"),
+            Map.entry("In", "in"),
+            Map.entry("NotIn", "notIn"),
+            Map.entry("And", "and"),
+            Map.entry("Or", "or"),
+            Map.entry("Not", "not"),
+            Map.entry("ElementMatch", "elemMatch"),
+            Map.entry("Regex", "regex"),
+            Map.entry("Text", "text"));
+
+    /**
+     * The operators Nitrite answers from the index on their field, if there is one.
+     */
+    private static final Set<String> INDEXED_OPERATORS = Set.of("eq", "gt", "gte", "lt", "lte", "in", "notIn", "text");
+
+    private static final ClassValue<Field> FIELD_NAMES = new ClassValue<>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                try {
+                    Field field = current.getDeclaredField("field");
+                    field.setAccessible(true);
+                    return field;
+                } catch (NoSuchFieldException e) {
+                    // declared by a super class, if at all
+                }
+            }
+            return null;
+        }
+    };
+
+    private static final ClassValue<Field> VALUES = new ClassValue<>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                for (String name : List.of("value", "comparable")) {
+                    try {
+                        Field field = current.getDeclaredField(name);
+                        field.setAccessible(true);
+                        return field;
+                    } catch (NoSuchFieldException e) {
+                        // named the other way or declared by a super class, if at all
+                    }
+                }
+            }
+            return null;
+        }
+    };
+
+    private FilterNodes() {
+    }
+
+    /**
+     * @param filter the filter
+     * @return the filters combined by an {@code and}, {@code or} or {@code not} filter, or none for other filters
+     */
+    public static List<Filter> children(Filter filter) {
+        if (filter instanceof AndFilter and) {
+            return List.of(and.getFilters());
+        } else if (filter instanceof OrFilter or) {
+            return List.of(or.getFilters());
+        } else if (filter instanceof NotFilter not) {
+            return List.of(not.getFilter());
+        }
+        return List.of();
+    }
+
+    public static boolean isAnd(Filter filter) {
+        return filter instanceof AndFilter;
+    }
+
+    public static boolean isNot(Filter filter) {
+        return filter instanceof NotFilter;
+    }
+
+    /**
+     * @param filter the filter
+     * @return the name of the operator of the filter, as named by {@link Filters}, patched filters included
+     */
+    public static String operator(Filter filter) {
+        String name = filter.getClass().getSimpleName();
+        if (name.startsWith("Patched")) {
+            name = name.substring("Patched".length());
+        }
+        if (name.endsWith("Filter")) {
+            name = name.substring(0, name.length() - "Filter".length());
+        }
+        return OPERATORS.getOrDefault(name, name);
+    }
+
+    /**
+     * @param filter the filter
+     * @return the field the filter applies to or {@code null} if it combines other filters
+     */
+    public static String field(Filter filter) {
+        Field field = FIELD_NAMES.get(filter.getClass());
+        if (field == null) {
+            return null;
+        }
+        try {
+            return (String) field.get(filter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't access the field of " + filter.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * @param filter the filter
+     * @return the value the filter compares the field with, or {@code null} if it doesn't compare with a single value
+     */
+    public static Object value(Filter filter) {
+        Field field = VALUES.get(filter.getClass());
+        if (field == null) {
+            return null;
+        }
+        try {
+            return field.get(filter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't access the value of " + filter.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * @param filter         a filter which doesn't combine other filters
+     * @param nitriteService the service the filter is applied with
+     * @return whether Nitrite answers the filter from the index on its field, rather than by reading the documents
+     */
+    public static boolean usesIndex(Filter filter, NitriteService nitriteService) {
+        String field = field(filter);
+        String operator = operator(filter);
+        if (field == null || !INDEXED_OPERATORS.contains(operator) || (operator.equals("eq") && value(filter) == null)) {
+            return false;
+        }
+        return nitriteService.hasIndex(field) && !nitriteService.isIndexing(field);
+    }
+
+    /**
+     * @param filter the filter
+     * @return whether the filter is one of the {@link PatchedFilters}, whose comparisons of values other than numbers
+     * are inverted
+     */
+    public static boolean isPatched(Filter filter) {
+        return filter.getClass().getSimpleName().startsWith("Patched");
+    }
+}
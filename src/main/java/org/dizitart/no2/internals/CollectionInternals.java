@@ -0,0 +1,95 @@
+package org.dizitart.no2.internals;
+
+import java.lang.reflect.Field;
+
+import org.dizitart.no2.Document;
+import org.dizitart.no2.NitriteCollection;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.store.NitriteMap;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+/**
+ * Exposes the document map of a collection, which can be read without going through the read lock Nitrite holds for
+ * every query and lookup, since the underlying {@link MVMap} is a copy-on-write tree.
+ */
+public class CollectionInternals {
+
+    private final NitriteMap<NitriteId, Document> documents;
+    private final MVMap<NitriteId, Document> documentMap;
+    private final NitriteService nitriteService;
+    private final FieldChanges fieldChanges = new FieldChanges();
+
+    @SuppressWarnings("unchecked")
+    public CollectionInternals(NitriteCollection collection) {
+        documents = (NitriteMap<NitriteId, Document>) readField(DefaultNitriteCollection.class, "nitriteMap", collection);
+        nitriteService = (NitriteService) readField(DefaultNitriteCollection.class, "nitriteService", collection);
+        documentMap = (MVMap<NitriteId, Document>) readField(documents.getClass(), "mvMap", documents);
+    }
+
+    /**
+     * Gets the current version of a document, without taking Nitrite's read lock.
+     *
+     * @param nitriteId the id of the document
+     * @return the stored document or {@code null}
+     */
+    public Document getById(NitriteId nitriteId) {
+        return documentMap.get(nitriteId);
+    }
+
+    /**
+     * @return the store holding the documents of the collection
+     */
+    public MVStore store() {
+        return documentMap.getStore();
+    }
+
+    /**
+     * Replaces the stored instance of a document by a copy, so changes Nitrite makes to the instance it holds don't
+     * show through the snapshots taken before.
+     *
+     * @param nitriteId the id of the document
+     */
+    public void detach(NitriteId nitriteId) {
+        Document stored = documentMap.get(nitriteId);
+        if (stored != null) {
+            documentMap.put(nitriteId, new Document(stored));
+        }
+    }
+
+    /**
+     * @return the changes of the fields, which the writes to the collection have to record
+     */
+    public FieldChanges fieldChanges() {
+        return fieldChanges;
+    }
+
+    /**
+     * Takes a snapshot of the documents as they are now.
+     *
+     * @return the snapshot
+     */
+    public DocumentSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * Takes a snapshot of the documents as they are now, showing the pending documents in place of the stored ones.
+     *
+     * @param pendingDocuments the documents written but not stored yet or {@code null}
+     * @return the snapshot
+     */
+    public DocumentSnapshot snapshot(PendingDocuments pendingDocuments) {
+        return new DocumentSnapshot(documents, documentMap, nitriteService, fieldChanges, pendingDocuments);
+    }
+
+    private static Object readField(Class<?> type, String name, Object instance) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(instance);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException("Can't access " + name + " of " + type.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package org.dizitart.no2.internals;
+
+import java.lang.ref.Cleaner;
+import java.util.AbstractCollection;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+import org.dizitart.no2.Document;
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.exceptions.FilterException;
+import org.dizitart.no2.filters.FilterNodes;
+import org.dizitart.no2.meta.Attributes;
+import org.dizitart.no2.store.NitriteMap;
+import org.dizitart.no2.store.NitriteStore;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.Page;
+
+import static org.dizitart.no2.exceptions.ErrorMessage.FILTERED_FIND_OPERATION_FAILED;
+
+/**
+ * A read-only view of the documents of a collection at the time it was taken, backed by the root page the
+ * {@link MVMap} had at that time. Writes replace the pages they touch rather than changing them, so reading the view
+ * neither blocks nor is affected by concurrent writes.
+ * <p>
+ * The version of the store is registered as in use until the snapshot is closed, so the pages it refers to are not
+ * dropped from the file in the meantime. A snapshot can be shared by retaining it, it is closed once every holder
+ * closed it. Snapshots which are never closed release their version once they are garbage collected.
+ * <p>
+ * A snapshot can be restricted to some of its documents, like the candidates selected by an index, so filters which
+ * have to read the documents only read those.
+ * <p>
+ * Nitrite's indices hold the current values of the documents, so they are only used for the fields which didn't
+ * change since the snapshot was taken, see {@link FieldChanges}.
+ * <p>
+ * A snapshot taken with {@link PendingDocuments} shows them in place of the stored documents. Filters are evaluated
+ * against the stored and the pending documents separately, the pending ones are always scanned.
+ */
+public class DocumentSnapshot implements NitriteMap<NitriteId, Document>, AutoCloseable {
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final NitriteMap<NitriteId, Document> documents;
+    private final MVMap<NitriteId, Document> documentMap;
+    private final NitriteService nitriteService;
+    private final FieldChanges fieldChanges;
+    private final long sequence;
+    private final Page root;
+    private final DocumentSnapshot counted;
+    private final LongAdder reads;
+    private final Set<NitriteId> restriction;
+    private final DocumentSnapshot pending;
+    private final AtomicInteger holders;
+    private final Cleaner.Cleanable versionUsage;
+
+    DocumentSnapshot(NitriteMap<NitriteId, Document> documents, MVMap<NitriteId, Document> documentMap, NitriteService nitriteService, FieldChanges fieldChanges, PendingDocuments pendingDocuments) {
+        // read before the stored documents, so the pending documents stored in the meantime are still shown
+        Page pendingRoot = pendingDocuments == null ? null : pendingDocuments.root();
+        this.documents = documents;
+        this.documentMap = documentMap;
+        this.nitriteService = nitriteService;
+        this.fieldChanges = fieldChanges;
+        // read before the root, so the changes the root may already hold count as made after the snapshot
+        this.sequence = fieldChanges.sequence();
+        this.counted = null;
+        this.reads = null;
+        this.restriction = null;
+        this.holders = new AtomicInteger(1);
+
+        MVStore store = documentMap.getStore();
+        MVStore.TxCounter version = store.registerVersionUsage();
+        this.root = documentMap.flushAndGetRoot().root;
+        this.versionUsage = cleaner.register(this, () -> store.deregisterVersionUsage(version));
+        this.pending = pendingRoot == null ? null : new DocumentSnapshot(this, pendingDocuments.documentMap(), pendingRoot);
+    }
+
+    /**
+     * Creates the snapshot of the pending documents, which are not indexed.
+     */
+    private DocumentSnapshot(DocumentSnapshot stored, MVMap<NitriteId, Document> pendingMap, Page pendingRoot) {
+        this.documents = stored.documents;
+        this.documentMap = pendingMap;
+        this.nitriteService = stored.nitriteService;
+        this.fieldChanges = null;
+        this.sequence = 0;
+        this.root = pendingRoot;
+        this.counted = null;
+        this.reads = null;
+        this.restriction = null;
+        this.pending = null;
+        this.holders = stored.holders;
+        this.versionUsage = stored.versionUsage;
+    }
+
+    private DocumentSnapshot(DocumentSnapshot counted, LongAdder reads, Set<NitriteId> restriction, DocumentSnapshot pending) {
+        this.documents = counted.documents;
+        this.documentMap = counted.documentMap;
+        this.nitriteService = counted.nitriteService;
+        this.fieldChanges = counted.fieldChanges;
+        this.sequence = counted.sequence;
+        this.root = counted.root;
+        // keeps the version of the counted snapshot in use
+        this.counted = counted;
+        this.reads = reads;
+        this.restriction = restriction;
+        this.pending = pending;
+        this.holders = counted.holders;
+        this.versionUsage = counted.versionUsage;
+    }
+
+    /**
+     * Shares this snapshot with another holder, which has to close it as well.
+     *
+     * @return this snapshot
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public DocumentSnapshot retain() {
+        int current;
+        do {
+            current = holders.get();
+            if (current == 0) {
+                throw new IllegalStateException("Snapshot of " + getName() + " is closed");
+            }
+        } while (!holders.compareAndSet(current, current + 1));
+        return this;
+    }
+
+    /**
+     * Releases the version of the store the snapshot reads once every holder closed it, its documents must not be read
+     * afterwards. Views of a snapshot share its holders, so closing a view closes the snapshot.
+     */
+    @Override
+    public void close() {
+        if (holders.updateAndGet((current) -> Math.max(current - 1, 0)) == 0) {
+            versionUsage.clean();
+        }
+    }
+
+    /**
+     * Creates a view of this snapshot counting the entries read through it, by lookup or by iterating over it.
+     * Checking whether the matches of a filter are part of the snapshot is not counted.
+     *
+     * @param reads the counter to add the reads to
+     * @return the counting view
+     */
+    public DocumentSnapshot countingReads(LongAdder reads) {
+        return new DocumentSnapshot(counted(), reads, restriction, pending == null ? null : pending.countingReads(reads));
+    }
+
+    /**
+     * Creates a view of this snapshot holding only the given documents, as far as they are part of the snapshot. Reads
+     * through the view are counted like reads through this snapshot. The pending documents are not restricted.
+     *
+     * @param nitriteIds the ids of the documents, iterated in their order
+     * @return the restricted view
+     */
+    public DocumentSnapshot restrictedTo(Set<NitriteId> nitriteIds) {
+        return new DocumentSnapshot(counted(), reads, nitriteIds, pending);
+    }
+
+    private DocumentSnapshot counted() {
+        return counted == null ? this : counted;
+    }
+
+    /**
+     * @return a view of the stored documents of this snapshot
+     */
+    private DocumentSnapshot stored() {
+        return new DocumentSnapshot(counted(), reads, restriction, null);
+    }
+
+    /**
+     * Finds the ids of the documents of the snapshot matching a filter. Filters answered by an index consult the
+     * current index, so their matches are narrowed down to the documents which are part of the snapshot. If a field
+     * the index was consulted for changed in the meantime, the filter is evaluated again scanning the snapshot for it.
+     *
+     * @param filter the filter or {@code null} for all documents
+     * @return the matching ids
+     */
+    public Set<NitriteId> find(Filter filter) {
+        if (filter == null) {
+            return keySet();
+        }
+        if (pending != null) {
+            Set<NitriteId> matches = new LinkedHashSet<>();
+            for (NitriteId nitriteId : stored().find(filter)) {
+                if (!pending.holds(nitriteId)) {
+                    matches.add(nitriteId);
+                }
+            }
+            for (NitriteId nitriteId : pending.find(filter)) {
+                if (!PendingDocuments.isDeleted(pending.documentMap.get(pending.root, nitriteId))) {
+                    matches.add(nitriteId);
+                }
+            }
+            return matches;
+        }
+
+        Set<String> scanned = new HashSet<>();
+        Set<NitriteId> result;
+        while (true) {
+            SnapshotNitriteService indices = new SnapshotNitriteService(nitriteService, this, scanned);
+            filter.setNitriteService(indices);
+            try {
+                result = filter.apply(this);
+            } catch (FilterException fe) {
+                throw fe;
+            } catch (Throwable t) {
+                throw new FilterException(FILTERED_FIND_OPERATION_FAILED, t);
+            }
+
+            int before = scanned.size();
+            indices.consulted().stream().filter(this::changedSince).forEach(scanned::add);
+            if (scanned.size() == before) {
+                break;
+            }
+        }
+
+        Set<NitriteId> matches = new LinkedHashSet<>();
+        if (result != null) {
+            for (NitriteId nitriteId : result) {
+                if (holds(nitriteId)) {
+                    matches.add(nitriteId);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param filter a filter which doesn't combine other filters
+     * @return whether the filter is answered from an index when applied to this snapshot
+     */
+    public boolean usesIndex(Filter filter) {
+        return FilterNodes.usesIndex(filter, nitriteService) && !changedSince(FilterNodes.field(filter));
+    }
+
+    /**
+     * @param field the field, embedded fields are separated by dots
+     * @return whether the values of the field changed since the snapshot was taken, or are being changed, which they
+     * always are for the pending documents as they are not indexed
+     */
+    public boolean changedSince(String field) {
+        return fieldChanges == null || fieldChanges.changedSince(field, sequence);
+    }
+
+    /**
+     * Checks whether a document is part of the snapshot, without counting it as read.
+     */
+    private boolean holds(NitriteId nitriteId) {
+        return (restriction == null || restriction.contains(nitriteId)) && documentMap.get(root, nitriteId) != null;
+    }
+
+    @Override
+    public boolean containsKey(NitriteId nitriteId) {
+        return get(nitriteId) != null;
+    }
+
+    @Override
+    public Document get(NitriteId nitriteId) {
+        Document pendingDocument = pending == null ? null : pending.documentMap.get(pending.root, nitriteId);
+        if (pendingDocument != null) {
+            if (reads != null) {
+                reads.increment();
+            }
+            return PendingDocuments.isDeleted(pendingDocument) ? null : pendingDocument;
+        }
+        if (restriction != null && !restriction.contains(nitriteId)) {
+            return null;
+        }
+        if (reads != null) {
+            reads.increment();
+        }
+        return documentMap.get(root, nitriteId);
+    }
+
+    @Override
+    public NitriteStore getStore() {
+        return documents.getStore();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public String getName() {
+        return documents.getName();
+    }
+
+    @Override
+    public Attributes getAttributes() {
+        return documents.getAttributes();
+    }
+
+    @Override
+    public void setAttributes(Attributes attributes) {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public Collection<Document> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Document> iterator() {
+                return snapshotIterator((nitriteId, document) -> document);
+            }
+
+            @Override
+            public int size() {
+                return DocumentSnapshot.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Document remove(NitriteId nitriteId) {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public Set<NitriteId> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<NitriteId> iterator() {
+                return snapshotIterator((nitriteId, document) -> nitriteId);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof NitriteId nitriteId && containsKey(nitriteId);
+            }
+
+            @Override
+            public int size() {
+                return DocumentSnapshot.this.size();
+            }
+        };
+    }
+
+    @Override
+    public void put(NitriteId nitriteId, Document document) {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(sizeAsLong(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long sizeAsLong() {
+        long size = restriction == null ? root.getTotalCount() : restriction.size();
+        if (pending != null) {
+            DocumentSnapshot stored = stored();
+            for (Cursor<NitriteId, Document> cursor = new Cursor<>(pending.root, null); cursor.hasNext(); ) {
+                NitriteId nitriteId = cursor.next();
+                size += (PendingDocuments.isDeleted(cursor.getValue()) ? 0 : 1) - (stored.holds(nitriteId) ? 1 : 0);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Document putIfAbsent(NitriteId nitriteId, Document document) {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public Set<Map.Entry<NitriteId, Document>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<NitriteId, Document>> iterator() {
+                return snapshotIterator(SimpleImmutableEntry::new);
+            }
+
+            @Override
+            public int size() {
+                return DocumentSnapshot.this.size();
+            }
+        };
+    }
+
+    @Override
+    public NitriteId higherKey(NitriteId nitriteId) {
+        return documentMap.higherKey(root, nitriteId);
+    }
+
+    @Override
+    public NitriteId ceilingKey(NitriteId nitriteId) {
+        return documentMap.ceilingKey(root, nitriteId);
+    }
+
+    @Override
+    public NitriteId lowerKey(NitriteId nitriteId) {
+        return documentMap.lowerKey(root, nitriteId);
+    }
+
+    @Override
+    public NitriteId floorKey(NitriteId nitriteId) {
+        return documentMap.floorKey(root, nitriteId);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return sizeAsLong() == 0;
+    }
+
+    @Override
+    public List<NitriteId> keyList() {
+        return new ArrayList<>(keySet());
+    }
+
+    private <T> Iterator<T> snapshotIterator(BiFunction<NitriteId, Document, T> element) {
+        if (pending != null) {
+            // the stored documents replaced by pending ones are skipped, the pending ones follow
+            Stream<Map.Entry<NitriteId, Document>> stored = stored().entrySet().stream()
+                    .filter((entry) -> !pending.holds(entry.getKey()));
+            Stream<Map.Entry<NitriteId, Document>> added = pending.entrySet().stream()
+                    .filter((entry) -> !PendingDocuments.isDeleted(entry.getValue()));
+            return Stream.concat(stored, added).map((entry) -> element.apply(entry.getKey(), entry.getValue())).iterator();
+        }
+        return restriction == null ? new SnapshotIterator<>(element) : new RestrictedIterator<>(element);
+    }
+
+    private class SnapshotIterator<T> implements Iterator<T> {
+
+        private final Cursor<NitriteId, Document> cursor = new Cursor<>(root, null);
+        private final BiFunction<NitriteId, Document, T> element;
+
+        SnapshotIterator(BiFunction<NitriteId, Document, T> element) {
+            this.element = element;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public T next() {
+            cursor.next();
+            if (reads != null) {
+                reads.increment();
+            }
+            return element.apply(cursor.getKey(), cursor.getValue());
+        }
+    }
+
+    /**
+     * Iterates over the documents of a restricted view, skipping the ones which are not part of the snapshot.
+     */
+    private class RestrictedIterator<T> implements Iterator<T> {
+
+        private final Iterator<NitriteId> nitriteIds = restriction.iterator();
+        private final BiFunction<NitriteId, Document, T> element;
+        private NitriteId nextId;
+        private Document next;
+
+        RestrictedIterator(BiFunction<NitriteId, Document, T> element) {
+            this.element = element;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && nitriteIds.hasNext()) {
+                nextId = nitriteIds.next();
+                next = get(nextId);
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = element.apply(nextId, next);
+            next = null;
+            return result;
+        }
+    }
+}
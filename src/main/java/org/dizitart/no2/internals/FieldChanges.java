@@ -0,0 +1,75 @@
+package org.dizitart.no2.internals;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks when the values of the fields of a collection last changed, so a {@link DocumentSnapshot} can tell whether
+ * the indices, which hold the current values of the documents, still agree with it for a field. Changes are numbered
+ * by a sequence the snapshots read before they are taken, and a field counts as changed while a write is changing it,
+ * as Nitrite updates its indices after the document map.
+ * <p>
+ * Fields are tracked by their top-level name, a change of any embedded value counts as a change of the whole field.
+ * Only the stream thread writes, so the sequence of the last change of a field never decreases.
+ */
+public class FieldChanges {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Change> changes = new ConcurrentHashMap<>();
+
+    /**
+     * @return the number of the last completed change
+     */
+    public long sequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Marks fields as being changed, until {@link #end(Collection)} is called for them.
+     *
+     * @param fields the fields about to change
+     */
+    public void begin(Collection<String> fields) {
+        for (String field : fields) {
+            changes.computeIfAbsent(topLevel(field), (key) -> new Change()).inFlight.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the change of fields marked by {@link #begin(Collection)}, once the documents and indices hold their new
+     * values.
+     *
+     * @param fields the changed fields
+     */
+    public void end(Collection<String> fields) {
+        long last = sequence.incrementAndGet();
+        for (String field : fields) {
+            Change change = changes.get(topLevel(field));
+            change.last = last;
+            change.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param field    the field, embedded fields are separated by dots
+     * @param sequence the sequence read before the snapshot was taken
+     * @return whether the field changed after the snapshot was taken or is being changed
+     */
+    public boolean changedSince(String field, long sequence) {
+        Change change = changes.get(topLevel(field));
+        return change != null && (change.inFlight.get() > 0 || change.last > sequence);
+    }
+
+    private static String topLevel(String field) {
+        int separator = field.indexOf('.');
+        return separator < 0 ? field : field.substring(0, separator);
+    }
+
+    private static final class Change {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long last;
+    }
+}
@@ -0,0 +1,63 @@
+package org.dizitart.no2.internals;
+
+import org.dizitart.no2.Document;
+import org.dizitart.no2.NitriteId;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.Page;
+
+/**
+ * Documents written to a collection but not stored yet, like the entries of a write cache. A {@link DocumentSnapshot}
+ * taken with them shows them in place of the stored documents with the same ids. They are kept in an in-memory
+ * {@link MVMap}, so a snapshot sees them as they were when it was taken while the writer keeps changing them.
+ * <p>
+ * Only the stream thread writes. Snapshots read the pending documents before the stored ones, so a document which is
+ * stored before it is removed from the pending ones is always seen on either side.
+ */
+public class PendingDocuments {
+
+    private static final Document DELETED = new Document();
+
+    private final MVMap<NitriteId, Document> documentMap = MVStore.open(null).openMap("pending");
+
+    /**
+     * @param nitriteId the id of the document
+     * @param document  the document, which must not be changed afterwards
+     */
+    public void put(NitriteId nitriteId, Document document) {
+        documentMap.put(nitriteId, document);
+    }
+
+    /**
+     * Hides the stored document with the given id.
+     *
+     * @param nitriteId the id of the document
+     */
+    public void delete(NitriteId nitriteId) {
+        documentMap.put(nitriteId, DELETED);
+    }
+
+    /**
+     * Drops the pending write of a document once it is stored.
+     *
+     * @param nitriteId the id of the document
+     */
+    public void remove(NitriteId nitriteId) {
+        documentMap.remove(nitriteId);
+    }
+
+    MVMap<NitriteId, Document> documentMap() {
+        return documentMap;
+    }
+
+    Page root() {
+        return documentMap.flushAndGetRoot().root;
+    }
+
+    /**
+     * @return whether the pending document hides the stored one rather than replacing it
+     */
+    static boolean isDeleted(Document document) {
+        return document == DELETED;
+    }
+}
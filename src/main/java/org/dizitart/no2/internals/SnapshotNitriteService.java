@@ -0,0 +1,113 @@
+package org.dizitart.no2.internals;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dizitart.no2.NitriteContext;
+import org.dizitart.no2.NitriteId;
+import org.dizitart.no2.mapper.NitriteMapper;
+
+/**
+ * The indices of a collection as the filters evaluated against a {@link DocumentSnapshot} see them. An index is only
+ * reported for a field which didn't change since the snapshot was taken, see {@link FieldChanges}, the filters scan the
+ * snapshot for the other ones. The fields the indices are consulted for are collected, as they may change while the
+ * filter is evaluated.
+ * <p>
+ * Filters only use the services they are given for index lookups, so everything else is left to the base class, which
+ * is never used to read or write documents.
+ */
+class SnapshotNitriteService extends NitriteService {
+
+    private final NitriteService nitriteService;
+    private final DocumentSnapshot snapshot;
+    private final Set<String> scanned;
+    private final Set<String> consulted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param nitriteService the services of the collection
+     * @param snapshot       the snapshot the filters are evaluated against
+     * @param scanned        the fields to scan the snapshot for, whether or not they changed
+     */
+    SnapshotNitriteService(NitriteService nitriteService, DocumentSnapshot snapshot, Set<String> scanned) {
+        super(snapshot, nitriteService.getNitriteContext(), null);
+        this.nitriteService = nitriteService;
+        this.snapshot = snapshot;
+        this.scanned = scanned;
+    }
+
+    /**
+     * @return the fields the indices were consulted for
+     */
+    Set<String> consulted() {
+        return consulted;
+    }
+
+    @Override
+    public boolean hasIndex(String field) {
+        if (scanned.contains(field) || snapshot.changedSince(field) || !nitriteService.hasIndex(field)) {
+            return false;
+        }
+        consulted.add(field);
+        return true;
+    }
+
+    @Override
+    public boolean isIndexing(String field) {
+        return nitriteService.isIndexing(field);
+    }
+
+    @Override
+    public Set<NitriteId> findEqualWithIndex(String field, Object value) {
+        return nitriteService.findEqualWithIndex(field, value);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<NitriteId> findGreaterThanWithIndex(String field, Comparable value) {
+        return nitriteService.findGreaterThanWithIndex(field, value);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<NitriteId> findGreaterEqualWithIndex(String field, Comparable value) {
+        return nitriteService.findGreaterEqualWithIndex(field, value);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<NitriteId> findLesserThanWithIndex(String field, Comparable value) {
+        return nitriteService.findLesserThanWithIndex(field, value);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<NitriteId> findLesserEqualWithIndex(String field, Comparable value) {
+        return nitriteService.findLesserEqualWithIndex(field, value);
+    }
+
+    @Override
+    public Set<NitriteId> findInWithIndex(String field, Collection<Object> values) {
+        return nitriteService.findInWithIndex(field, values);
+    }
+
+    @Override
+    public Set<NitriteId> findNotInWithIndex(String field, Collection<Object> values) {
+        return nitriteService.findNotInWithIndex(field, values);
+    }
+
+    @Override
+    public Set<NitriteId> findTextWithIndex(String field, String value) {
+        return nitriteService.findTextWithIndex(field, value);
+    }
+
+    @Override
+    public NitriteMapper getNitriteMapper() {
+        return nitriteService.getNitriteMapper();
+    }
+
+    @Override
+    public NitriteContext getNitriteContext() {
+        return nitriteService.getNitriteContext();
+    }
+}
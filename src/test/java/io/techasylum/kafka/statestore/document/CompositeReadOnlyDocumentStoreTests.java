@@ -1,16 +1,23 @@
 package io.techasylum.kafka.statestore.document;
 
 import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.techasylum.kafka.statestore.document.composite.CompositeCursor;
 import io.techasylum.kafka.statestore.document.composite.CompositeFindOptions;
 import io.techasylum.kafka.statestore.document.composite.CompositeIndexedDocumentStore;
+import io.techasylum.kafka.statestore.document.composite.CompositeQueryPlan;
 import io.techasylum.kafka.statestore.document.composite.CompositeReadOnlyDocumentStore;
 import io.techasylum.kafka.statestore.document.internals.InternalMockProcessorContext;
 import io.techasylum.kafka.statestore.document.internals.MockRecordCollector;
@@ -20,9 +27,12 @@ import io.techasylum.kafka.statestore.document.no2.NitriteDocumentStore;
 import io.techasylum.kafka.statestore.document.no2.movies.Movie;
 import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyQueryMetadata;
 import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.errors.InvalidStateStorePartitionException;
 import org.apache.kafka.streams.processor.StateStoreContext;
 import org.apache.kafka.streams.processor.internals.ProcessorStateManager;
+import org.apache.kafka.streams.state.HostInfo;
 import org.apache.kafka.streams.state.QueryableStoreTypes;
 import org.apache.kafka.streams.state.StateSerdes;
 import org.apache.kafka.streams.state.internals.CompositeReadOnlyKeyValueStore;
@@ -33,6 +43,7 @@ import org.dizitart.no2.exceptions.IndexingException;
 import org.dizitart.no2.exceptions.ValidationException;
 import org.dizitart.no2.filters.Filters;
 import org.dizitart.no2.filters.PatchedFilters;
+import org.dizitart.no2.objects.Cursor;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -41,6 +52,8 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.awaitility.Awaitility.await;
 import static org.dizitart.no2.IndexOptions.indexOptions;
 import static org.dizitart.no2.IndexType.Fulltext;
@@ -50,10 +63,15 @@ import static org.dizitart.no2.SortOrder.Descending;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
 
 public class CompositeReadOnlyDocumentStoreTests {
 
     private final String storeName = "my-store";
+    private StateStoreProviderStub stubProviderOne;
     private StateStoreProviderStub stubProviderTwo;
     private NitriteDocumentStore<String, Document> stubOneUnderlying;
     private NitriteDocumentStore<String, Document> otherUnderlyingStore;
@@ -75,7 +93,7 @@ public class CompositeReadOnlyDocumentStoreTests {
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         movieSerde = new DocumentSerde<>(Document.class, objectMapper);
 
-        final StateStoreProviderStub stubProviderOne = new StateStoreProviderStub(false);
+        stubProviderOne = new StateStoreProviderStub(false);
         stubProviderTwo = new StateStoreProviderStub(false);
 
         stubOneUnderlying = newStoreInstance(0);
@@ -95,7 +113,10 @@ public class CompositeReadOnlyDocumentStoreTests {
     }
 
     private NitriteDocumentStore<String, Document> newStoreInstance(int partition) {
-        final NitriteDocumentStore<String, Document> store = DocumentStores.nitriteStore(storeName, "code", Serdes.String(), Document.class, objectMapper).build();
+        return initStore(DocumentStores.nitriteStore(storeName, "code", Serdes.String(), Document.class, objectMapper).build(), partition);
+    }
+
+    private NitriteDocumentStore<String, Document> initStore(NitriteDocumentStore<String, Document> store, int partition) {
         File storeDir = getNewStoreDir();
 
         @SuppressWarnings("rawtypes") final InternalMockProcessorContext context =
@@ -162,6 +183,20 @@ public class CompositeReadOnlyDocumentStoreTests {
         assertEquals(matrix2, objectMapper.convertValue(theStore.get(matrix2.code()), Movie.class));
     }
 
+    @Test
+    public void shouldGetValueFromOwningPartitionOnly() {
+        final WritableDocumentStore<String, Document> store = newStoreInstance(3);
+        stubProviderTwo.addStore(storeName, store);
+
+        store.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        stubOneUnderlying.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+
+        assertEquals(matrix1, objectMapper.convertValue(theStore.get(matrix1.code(), 3), Movie.class));
+        assertEquals(matrix2, objectMapper.convertValue(theStore.get(matrix2.code(), new KeyQueryMetadata(HostInfo.unavailable(), Set.of(), 0)), Movie.class));
+        assertNull(theStore.get(matrix2.code(), 3));
+        assertThrows(InvalidStateStorePartitionException.class, () -> theStore.get(matrix1.code(), 7));
+    }
+
     @Test
     public void shouldFindMultipleValues() {
         stubOneUnderlying.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
@@ -195,6 +230,63 @@ public class CompositeReadOnlyDocumentStoreTests {
         assertThat(movieQueryCursor2.hasMore()).isFalse();
     }
 
+    @Test
+    public void shouldPageThroughSnapshotPinnedForFirstPage() {
+        stubOneUnderlying.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        stubOneUnderlying.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+        stubOneUnderlying.put(matrix3.code(), new Document(objectMapper.convertValue(matrix3, HashMap.class)));
+
+        CompositeCursor<Document> movieQueryCursor1 = theStore.findWithOptions(CompositeFindOptions.limit(Map.of(0, 0), 2));
+        assertThat(movieQueryCursor1.toList()).extracting((movie) -> movie.get("code")).containsExactlyInAnyOrder("MTRX1", "MTRX2");
+        assertThat(movieQueryCursor1.snapshots()).containsOnlyKeys(0);
+
+        stubOneUnderlying.delete(matrix3.code());
+        stubOneUnderlying.put(matrix4.code(), new Document(objectMapper.convertValue(matrix4, HashMap.class)));
+
+        CompositeCursor<Document> movieQueryCursor2 = theStore.findWithOptions(CompositeFindOptions.limit(movieQueryCursor1.nextOffsets(), 2).withSnapshots(movieQueryCursor1.snapshots()));
+        assertThat(movieQueryCursor2.toList()).extracting((movie) -> movie.get("code")).containsExactly("MTRX3");
+        assertThat(movieQueryCursor2.totalCount()).isEqualTo(3);
+        assertThat(movieQueryCursor2.hasMore()).isFalse();
+        assertThat(movieQueryCursor2.snapshots()).isEqualTo(movieQueryCursor1.snapshots());
+
+        CompositeCursor<Document> currentCursor = theStore.findWithOptions(CompositeFindOptions.limit(movieQueryCursor1.nextOffsets(), 2));
+        assertThat(currentCursor.toList()).extracting((movie) -> movie.get("code")).containsExactly("MTRX4");
+    }
+
+    @Test
+    public void shouldFailPagesOfSnapshotsWhichAreNoLongerPinned() {
+        stubOneUnderlying.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        stubOneUnderlying.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+        stubOneUnderlying.put(matrix3.code(), new Document(objectMapper.convertValue(matrix3, HashMap.class)));
+
+        CompositeCursor<Document> movieQueryCursor1 = theStore.findWithOptions(CompositeFindOptions.limit(Map.of(0, 0), 2));
+        long expired = movieQueryCursor1.snapshots().get(0) + 1;
+
+        assertThatThrownBy(() -> theStore.findWithOptions(CompositeFindOptions.limit(movieQueryCursor1.nextOffsets(), 2).withSnapshots(Map.of(0, expired))))
+                .isInstanceOf(SnapshotExpiredException.class);
+    }
+
+    @Test
+    public void shouldCloseTheCursorsOfThePartitionsWhenAnotherPartitionFails() {
+        final NitriteDocumentStore<String, Document> store = spy(newStoreInstance(3));
+        final List<Cursor<Document>> cursors = new ArrayList<>();
+        doAnswer((invocation) -> {
+            Cursor<Document> cursor = (Cursor<Document>) invocation.callRealMethod();
+            cursors.add(cursor);
+            return cursor;
+        }).when(store).findWithOptions(any(), any(), anyLong());
+        stubProviderTwo.addStore(storeName, store);
+        store.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        stubOneUnderlying.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+
+        long expired = theStore.findWithOptions(CompositeFindOptions.limit(Map.of(0, 0), 2)).snapshots().get(0) + 1;
+
+        assertThatThrownBy(() -> theStore.findWithOptions(CompositeFindOptions.limit(Map.of(0, 0), 2).withSnapshots(Map.of(0, expired))))
+                .isInstanceOf(SnapshotExpiredException.class);
+        assertThat(cursors).hasSize(2);
+        assertThatThrownBy(cursors.get(1)::toList).isInstanceOf(IllegalStateException.class);
+    }
+
     @Test
     public void shouldSupportPaginationWhileFiltering() {
         stubOneUnderlying.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
@@ -230,6 +322,110 @@ public class CompositeReadOnlyDocumentStoreTests {
         assertThat(movieQueryCursor.toList()).map((d) -> d.get("code")).containsExactlyInAnyOrder(matrix2.code(), matrix3.code());
     }
 
+    @Test
+    public void shouldExplainQueryAcrossMultipleStores() {
+        final WritableDocumentStore<String, Document> store = newStoreInstance(3);
+        stubProviderTwo.addStore(storeName, store);
+
+        stubOneUnderlying.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        stubOneUnderlying.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+
+        store.put(matrix3.code(), new Document(objectMapper.convertValue(matrix3, HashMap.class)));
+        store.put(speed.code(), new Document(objectMapper.convertValue(speed, HashMap.class)));
+
+        CompositeQueryPlan plan = theStore.explain(PatchedFilters.gt("year", 2000), CompositeFindOptions.limit(Map.of(), 10));
+        assertThat(plan.partitions()).containsOnlyKeys(0, 3);
+        assertThat(plan.indexed()).isFalse();
+        assertThat(plan.scanned()).isEqualTo(4);
+        assertThat(plan.matched()).isEqualTo(2);
+        assertThat(plan.scans()).containsOnlyKeys(0, 3);
+        assertThat(plan.scans().get(3)).extracting((step) -> step.operation() + " " + step.field()).containsExactly("gt year");
+    }
+
+    @Test
+    public void shouldRecordSlowQueriesAcrossMultipleStores() {
+        final SlowQueryLog slowQueryLog = new SlowQueryLog(Duration.ZERO, 0, 10);
+        final StateStoreProviderStub provider = new StateStoreProviderStub(false);
+        final NitriteDocumentStore<String, Document> first = initStore(DocumentStores.nitriteStore(storeName, "code", Serdes.String(), Document.class, objectMapper).withSlowQueryLog(slowQueryLog).build(), 4);
+        final NitriteDocumentStore<String, Document> second = initStore(DocumentStores.nitriteStore(storeName, "code", Serdes.String(), Document.class, objectMapper).withSlowQueryLog(slowQueryLog).build(), 5);
+        provider.addStore(storeName, 4, first);
+        provider.addStore(storeName, 5, second);
+        final CompositeReadOnlyDocumentStore<String, Document> loggedStore = new CompositeReadOnlyDocumentStore<>(
+                new WrappingStoreProvider(singletonList(provider), StoreQueryParameters.fromNameAndType(storeName, new QueryableDocumentStoreTypes.DocumentStoreType<>())),
+                new QueryableDocumentStoreTypes.DocumentStoreType<>(),
+                storeName,
+                CompositeReadOnlyDocumentStore.SAME_THREAD,
+                slowQueryLog
+        );
+
+        first.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        first.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+        second.put(speed.code(), new Document(objectMapper.convertValue(speed, HashMap.class)));
+
+        loggedStore.findWithOptions(PatchedFilters.gt("year", 2000), CompositeFindOptions.sort("year", Ascending));
+        loggedStore.findWithOptions(PatchedFilters.gt("year", 1990), CompositeFindOptions.sort("year", Ascending));
+
+        assertThat(slowQueryLog.top()).extracting(SlowQueryLog.SlowQuery::store, SlowQueryLog.SlowQuery::fingerprint, SlowQueryLog.SlowQuery::partition, SlowQueryLog.SlowQuery::count, SlowQueryLog.SlowQuery::returned)
+                .containsExactlyInAnyOrder(
+                        tuple(storeName, "gt(year) sort(year)", 4, 2L, 3L),
+                        tuple(storeName, "gt(year) sort(year)", 5, 2L, 1L),
+                        tuple(storeName, "gt(year) sort(year)", SlowQueryLog.ALL_PARTITIONS, 2L, 4L));
+    }
+
+    @Test
+    public void shouldRecommendIndicesAcrossMultipleStores() {
+        final StateStoreProviderStub provider = new StateStoreProviderStub(false);
+        final NitriteDocumentStore<String, Document> first = initStore(DocumentStores.nitriteStore(storeName, "code", Serdes.String(), Document.class, objectMapper).withIndexAdvisor(2).build(), 4);
+        final NitriteDocumentStore<String, Document> second = initStore(DocumentStores.nitriteStore(storeName, "code", Serdes.String(), Document.class, objectMapper).withIndexAdvisor(2).build(), 5);
+        provider.addStore(storeName, 4, first);
+        provider.addStore(storeName, 5, second);
+        final CompositeReadOnlyDocumentStore<String, Document> advisedStore = new CompositeReadOnlyDocumentStore<>(
+                new WrappingStoreProvider(singletonList(provider), StoreQueryParameters.fromNameAndType(storeName, new QueryableDocumentStoreTypes.DocumentStoreType<>())),
+                new QueryableDocumentStoreTypes.DocumentStoreType<>(),
+                storeName
+        );
+
+        first.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        first.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+        second.put(speed.code(), new Document(objectMapper.convertValue(speed, HashMap.class)));
+
+        advisedStore.findWithOptions(PatchedFilters.gt("year", 2000), CompositeFindOptions.sort("year", Ascending));
+
+        Map<Integer, List<IndexRecommendation>> recommendations = advisedStore.recommendIndices();
+        assertThat(recommendations).containsOnlyKeys(4, 5);
+        assertThat(recommendations.get(4)).containsExactly(new IndexRecommendation("year", 0, 1, 1, 2, false));
+        assertThat(recommendations.get(5)).isEmpty();
+    }
+
+    @Test
+    public void shouldSupportFindAcrossMultipleStoresConcurrently() {
+        final WritableDocumentStore<String, Document> store = newStoreInstance(1);
+        stubProviderTwo.addStore(storeName, store);
+
+        stubOneUnderlying.put(matrix1.code(), new Document(objectMapper.convertValue(matrix1, HashMap.class)));
+        stubOneUnderlying.put(matrix2.code(), new Document(objectMapper.convertValue(matrix2, HashMap.class)));
+
+        store.put(matrix3.code(), new Document(objectMapper.convertValue(matrix3, HashMap.class)));
+        store.put(speed.code(), new Document(objectMapper.convertValue(speed, HashMap.class)));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CompositeReadOnlyDocumentStore<String, Document> concurrentStore = new CompositeReadOnlyDocumentStore<>(
+                    new WrappingStoreProvider(asList(stubProviderOne, stubProviderTwo), StoreQueryParameters.fromNameAndType(storeName, new QueryableDocumentStoreTypes.DocumentStoreType<>())),
+                    new QueryableDocumentStoreTypes.DocumentStoreType<>(),
+                    storeName,
+                    executor
+            );
+
+            CompositeCursor<Document> movieQueryCursor = concurrentStore.findWithOptions(PatchedFilters.gt("year", 1995), CompositeFindOptions.sort("rating", Descending).thenLimit(2));
+            assertThat(movieQueryCursor.toList()).map((d) -> d.get("code")).containsExactly(matrix1.code(), matrix2.code());
+            assertThat(movieQueryCursor.nextOffsets()).containsExactlyEntriesOf(Map.of(0, 2));
+            assertThrows(FilterException.class, () -> concurrentStore.find(Filters.text("title", "The Matrix")));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void shouldSupportLimitAcrossMultipleStores() {
         final WritableDocumentStore<String, Document> store = newStoreInstance(1);
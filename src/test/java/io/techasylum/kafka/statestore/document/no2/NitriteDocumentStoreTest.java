@@ -1,22 +1,75 @@
 package io.techasylum.kafka.statestore.document.no2;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.techasylum.kafka.statestore.document.DocumentStores;
+import io.techasylum.kafka.statestore.document.IndexRecommendation;
+import io.techasylum.kafka.statestore.document.QueryPlan;
+import io.techasylum.kafka.statestore.document.SlowQueryLog;
 import io.techasylum.kafka.statestore.document.internals.InternalMockProcessorContext;
+import io.techasylum.kafka.statestore.document.internals.MockRecordCollector;
+import io.techasylum.kafka.statestore.document.internals.MockTime;
 import io.techasylum.kafka.statestore.document.serialization.DocumentSerde;
+import io.techasylum.kafka.statestore.document.serialization.FieldNameDictionary;
+import io.techasylum.kafka.statestore.document.serialization.FieldNameDictionarySerde;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.common.utils.LogContext;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.processor.StateStoreContext;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.processor.internals.ChangelogRegister;
+import org.apache.kafka.streams.processor.internals.ChangelogRestoration;
 import org.apache.kafka.streams.processor.internals.InternalProcessorContext;
+import org.apache.kafka.streams.processor.internals.ProcessorStateManager;
+import org.apache.kafka.streams.processor.internals.StateDirectory;
+import org.apache.kafka.streams.processor.internals.Task;
+import org.apache.kafka.streams.processor.internals.metrics.StreamsMetricsImpl;
+import org.apache.kafka.streams.state.StateSerdes;
+import org.apache.kafka.streams.state.internals.OffsetCheckpoint;
 import org.dizitart.no2.Document;
+import org.dizitart.no2.Filter;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.Nitrite;
+import org.dizitart.no2.NitriteCollection;
+import org.dizitart.no2.SortOrder;
+import org.dizitart.no2.filters.Filters;
+import org.dizitart.no2.internals.CollectionInternals;
+import org.dizitart.no2.internals.DocumentSnapshot;
+import org.dizitart.no2.objects.Cursor;
 import org.junit.jupiter.api.Test;
 
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.awaitility.Awaitility.await;
 import static org.dizitart.no2.IndexOptions.indexOptions;
 import static org.dizitart.no2.IndexType.Fulltext;
+import static org.dizitart.no2.IndexType.NonUnique;
+import static org.dizitart.no2.IndexType.Unique;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class NitriteDocumentStoreTest {
 
@@ -42,4 +95,809 @@ class NitriteDocumentStoreTest {
         store.init((StateStoreContext) ctx, store);
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldResolveKeysWithoutIndexOnKeyField() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix"));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)"));
+
+        assertThat(store.hasIndex("code")).isFalse();
+        assertThat(store.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertThat(store.delete("MTRX2").get("title")).isEqualTo("The Matrix Reloaded");
+        assertNull(store.get("MTRX2"));
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(1);
+        assertNull(store.delete("MTRX2"));
+
+        assertNull(store.putIfAbsent("MTRX3", Document.createDocument("code", "MTRX3").put("title", "The Matrix Revolutions")));
+        assertThat(store.putIfAbsent("MTRX3", Document.createDocument("code", "MTRX3").put("title", "Revolutions")).get("title")).isEqualTo("The Matrix Revolutions");
+        assertThat(store.delete("MTRX3").get("title")).isEqualTo("The Matrix Revolutions");
+
+        store.close();
+        store.init((StateStoreContext) ctx, store);
+
+        assertThat(store.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertNull(store.get("MTRX2"));
+    }
+
+    @Test
+    void shouldKeepTheKeyIndexInTheFileAndRebuildItAfterUnflushedWrites() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix"));
+        store.flush();
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"));
+        store.mvStore().commit();
+        // crashes after the documents were committed in the background, but before the store was flushed
+        store.mvStore().closeImmediately();
+
+        store.init((StateStoreContext) ctx, store);
+
+        assertThat(store.mvStore().hasMap("name$key-index")).isTrue();
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded (2003)"));
+        assertThat(store.get("MTRX1").get("title")).isEqualTo("The Matrix");
+        assertThat(store.get("MTRX2").get("title")).isEqualTo("The Matrix Reloaded (2003)");
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(2);
+
+        store.close();
+        store.init((StateStoreContext) ctx, store);
+
+        assertThat(store.get("MTRX2").get("title")).isEqualTo("The Matrix Reloaded (2003)");
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotShareNestedValuesOfPlainDocumentsWithTheStoredOnes() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", DocumentConverters.converter(Document.class, mapper), Map.of(), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("details", Document.createDocument("director", "Wachowski")));
+
+        ((Document) store.get("MTRX1").get("details")).put("director", "changed by the reader");
+        ((Document) store.find(Filters.eq("code", "MTRX1")).firstOrDefault().get("details")).put("director", "changed by the reader");
+
+        assertThat(((Document) store.get("MTRX1").get("details")).get("director")).isEqualTo("Wachowski");
+    }
+
+    @Test
+    void shouldReopenPersistedDocumentsAndReplayOnlyTheChangelogTail() throws IOException {
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        StreamsConfig config = new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com", "state.dir", dir));
+        StateDirectory stateDirectory = new StateDirectory(config, Time.SYSTEM, true);
+        TaskId taskId = new TaskId(0, 0);
+        TopicPartition changelog = new TopicPartition("test-name-changelog", 0);
+        File checkpointFile = new File(stateDirectory.getOrCreateDirectoryForTask(taskId), ".checkpoint");
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+
+        ProcessorStateManager stateManager = stateManager(stateDirectory, taskId, changelog);
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), serde, "code", (document) -> document, Map.of(), emptyList(), false);
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(stateManager.baseDir(), config);
+        ctx.setStateManger(stateManager);
+        store.init((StateStoreContext) ctx, store);
+        ChangelogRestoration.initializeOffsetsFromCheckpoint(stateManager, true);
+        assertThat(store.persistent()).isTrue();
+
+        ChangelogRestoration.restore(stateManager, changelog, List.of(
+                changelogConsumerRecord(serde, 0, "MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix")),
+                changelogConsumerRecord(serde, 1, "MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"))
+        ));
+        stateManager.flush();
+        stateManager.checkpoint();
+        stateManager.close();
+
+        assertThat(new OffsetCheckpoint(checkpointFile).read()).isEqualTo(Map.of(changelog, 1L));
+
+        ProcessorStateManager reopenedStateManager = stateManager(stateDirectory, taskId, changelog);
+        NitriteDocumentStore<String, Document> reopened = new NitriteDocumentStore("name", Serdes.String(), serde, "code", (document) -> document, Map.of(), emptyList(), false);
+        InternalMockProcessorContext reopenedCtx = new InternalMockProcessorContext(reopenedStateManager.baseDir(), config);
+        reopenedCtx.setStateManger(reopenedStateManager);
+        reopened.init((StateStoreContext) reopenedCtx, reopened);
+        ChangelogRestoration.initializeOffsetsFromCheckpoint(reopenedStateManager, false);
+
+        // the changelog reader resumes after the checkpointed offset, so only the records past it are restored
+        assertThat(reopenedStateManager.changelogOffsets()).isEqualTo(Map.of(changelog, 2L));
+        List<ConsumerRecord<byte[], byte[]>> changelogRecords = List.of(
+                changelogConsumerRecord(serde, 0, "MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix")),
+                changelogConsumerRecord(serde, 1, "MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded")),
+                changelogConsumerRecord(serde, 2, "MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)"))
+        );
+        long resumeOffset = reopenedStateManager.changelogOffsets().get(changelog);
+        List<ConsumerRecord<byte[], byte[]>> tail = changelogRecords.stream().filter((record) -> record.offset() >= resumeOffset).toList();
+        ChangelogRestoration.restore(reopenedStateManager, changelog, tail);
+
+        assertThat(tail).hasSize(1);
+        assertThat(reopened.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertThat(reopened.get("MTRX2").get("title")).isEqualTo("The Matrix Reloaded");
+        assertThat(reopenedStateManager.changelogOffsets()).isEqualTo(Map.of(changelog, 3L));
+        reopenedStateManager.close();
+    }
+
+    @Test
+    void shouldRestoreOnlyLastValuePerKeyOfBatch() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), true);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+        ctx.restore("name", List.of(
+                changelogRecord(serde, "MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix")),
+                changelogRecord(serde, "MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded")),
+                changelogRecord(serde, "MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)")),
+                changelogRecord(serde, "MTRX2", null)
+        ));
+
+        assertThat(store.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertNull(store.get("MTRX2"));
+    }
+
+    @Test
+    void shouldRestoreBatchInOrderWithUniqueIndices() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("isbn", indexOptions(Unique)), emptyList(), true);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+        ctx.restore("name", List.of(changelogRecord(serde, "MTRX3", Document.createDocument("code", "MTRX3").put("isbn", 1))));
+
+        // applying the last value of MTRX2 at its first position would take the isbn MTRX3 only gives up after it
+        ctx.restore("name", List.of(
+                changelogRecord(serde, "MTRX2", Document.createDocument("code", "MTRX2").put("isbn", 2)),
+                changelogRecord(serde, "MTRX3", Document.createDocument("code", "MTRX3").put("isbn", 3)),
+                changelogRecord(serde, "MTRX2", Document.createDocument("code", "MTRX2").put("isbn", 1))
+        ));
+
+        assertThat(store.get("MTRX2").get("isbn")).isEqualTo(1);
+        assertThat(store.get("MTRX3").get("isbn")).isEqualTo(3);
+    }
+
+    @Test
+    void shouldSuspendIndicesWhileBulkLoading() {
+        BulkLoadingRestoreListener bulkLoading = new BulkLoadingRestoreListener();
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("title", indexOptions(NonUnique)), emptyList(), true, bulkLoading);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        TopicPartition changelog = new TopicPartition("test-name-changelog", store.getPartition());
+        bulkLoading.onRestoreStart(changelog, "name", 0L, 2L);
+        assertThat(store.hasIndex("title")).isFalse();
+
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+        ctx.restore("name", List.of(
+                changelogRecord(serde, "MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix")),
+                changelogRecord(serde, "MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"))
+        ));
+        bulkLoading.onRestoreEnd(changelog, "name", 2L);
+
+        assertThat(store.hasIndex("title")).isTrue();
+        assertThat(store.find(Filters.eq("title", "The Matrix")).toList()).hasSize(1);
+    }
+
+    @Test
+    void shouldKeepUniqueIndicesAndRecreateSuspendedIndicesAfterACrashWhileBulkLoading() {
+        BulkLoadingRestoreListener bulkLoading = new BulkLoadingRestoreListener();
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("code", indexOptions(Unique), "title", indexOptions(NonUnique, true)), emptyList(), true, bulkLoading);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.createIndex("year", indexOptions(NonUnique));
+        await().atMost(5, SECONDS).until(() -> !store.isIndexing("title"));
+
+        TopicPartition changelog = new TopicPartition("test-name-changelog", store.getPartition());
+        bulkLoading.onRestoreStart(changelog, "name", 0L, 2L);
+        assertThat(store.hasIndex("code")).isTrue();
+        assertThat(store.hasIndex("title")).isFalse();
+        assertThat(store.hasIndex("year")).isFalse();
+
+        // crashes after the drops were committed in the background
+        store.mvStore().commit();
+        store.mvStore().closeImmediately();
+        store.init((StateStoreContext) ctx, store);
+
+        await().atMost(5, SECONDS).until(() -> !store.isIndexing("title"));
+        assertThat(store.listIndices()).extracting((index) -> index.getField(), (index) -> index.getIndexType())
+                .containsExactlyInAnyOrder(tuple("code", Unique), tuple("title", NonUnique), tuple("year", NonUnique));
+    }
+
+    @Test
+    void shouldAbsorbRepeatedWritesUntilFlushWhenCaching() {
+        NitriteDocumentStore<String, Document> store = new CachingNitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), true, null, 10);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        MockRecordCollector recordCollector = new MockRecordCollector();
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(0, new File(dir), new StateSerdes<>("name-changelog", Serdes.String(), Serdes.String()), recordCollector);
+        ctx.setTime(1L);
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)"));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"));
+        store.delete("MTRX2");
+
+        assertThat(store.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        store.get("MTRX1").put("title", "changed by the reader");
+        assertThat(store.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertNull(store.get("MTRX2"));
+        assertThat(recordCollector.collected()).isEmpty();
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(1);
+        assertThat(store.find(Filters.eq("title", "The Matrix (1999)")).toList()).extracting((document) -> document.get("code")).containsExactly("MTRX1");
+
+        store.flush();
+
+        assertThat(recordCollector.collected()).hasSize(2);
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(1);
+
+        store.flush();
+
+        assertThat(recordCollector.collected()).hasSize(2);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("year", 1999));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"));
+        assertThat((Map<String, Object>) store.get("MTRX1")).containsEntry("title", "The Matrix (1999)").containsEntry("year", 1999);
+        assertThat(store.find(Filters.eq("year", 1999)).toList()).extracting((document) -> document.get("code")).containsExactly("MTRX1");
+        assertThat(store.findWithOptions(FindOptions.sort("title", SortOrder.Descending)).toList()).extracting((document) -> document.get("code")).containsExactly("MTRX2", "MTRX1");
+
+        store.delete("MTRX1");
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix Resurrections"));
+        assertThat((Map<String, Object>) store.get("MTRX1")).doesNotContainKey("year");
+        assertThat(store.find(Filters.eq("year", 1999)).totalCount()).isZero();
+        assertThat(recordCollector.collected()).hasSize(2);
+
+        store.flush();
+
+        assertThat(recordCollector.collected()).hasSize(4);
+        assertThat((Map<String, Object>) store.get("MTRX1")).containsEntry("title", "The Matrix Resurrections").doesNotContainKey("year");
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSelectSortedPageOfMatches() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        for (int i = 0; i < 10; i++) {
+            store.put("MOVIE" + i, Document.createDocument("code", "MOVIE" + i).put("rating", i % 5).put("genre", i % 2 == 0 ? "drama" : "action"));
+        }
+
+        Cursor<Document> page = store.findWithOptions(FindOptions.sort("rating", SortOrder.Descending).thenLimit(1, 3));
+        assertThat(page.totalCount()).isEqualTo(10);
+        assertThat(page.hasMore()).isTrue();
+        assertThat(page.toList()).extracting((document) -> document.get("code")).containsExactly("MOVIE9", "MOVIE3", "MOVIE8");
+
+        Cursor<Document> filtered = store.findWithOptions(Filters.eq("genre", "drama"), FindOptions.sort("rating", SortOrder.Ascending).thenLimit(3, 5));
+        assertThat(filtered.totalCount()).isEqualTo(5);
+        assertThat(filtered.hasMore()).isFalse();
+        assertThat(filtered.toList()).extracting((document) -> document.get("rating")).containsExactly(3, 4);
+
+        assertThat(store.findWithOptions(Filters.eq("genre", "comedy"), FindOptions.sort("rating", SortOrder.Ascending).thenLimit(0, 5)).size()).isZero();
+    }
+
+    @Test
+    void shouldOnlyConvertStreamedDocumentsWhenAccessed() {
+        AtomicInteger conversions = new AtomicInteger();
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> {
+            conversions.incrementAndGet();
+            return document;
+        }, Map.of(), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        for (int i = 0; i < 10; i++) {
+            store.put("MOVIE" + i, Document.createDocument("code", "MOVIE" + i));
+        }
+
+        assertThat(store.find(Filters.regex("code", ".*")).stream().count()).isEqualTo(10);
+        assertThat(conversions.get()).isZero();
+
+        assertThat(store.find(Filters.regex("code", ".*")).stream().limit(2)).hasSize(2);
+        assertThat(conversions.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotExposeStoredNestedDocumentsWithDeepCopies() {
+        NitriteDocumentStore<String, Document> store = DocumentStores.nitriteStore("name", "code", Serdes.String(), Document.class, mapper)
+                .withLoggingDisabled()
+                .withDeepCopies()
+                .build();
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("director", Document.createDocument("name", "Wachowski")));
+
+        Document director = (Document) store.get("MTRX1").get("director");
+        director.put("name", "Somebody else");
+
+        assertThat(((Document) store.get("MTRX1").get("director")).get("name")).isEqualTo("Wachowski");
+        assertThat(((Document) store.find(Filters.eq("code", "MTRX1")).firstOrDefault().get("director")).get("name")).isEqualTo("Wachowski");
+    }
+
+    @Test
+    void shouldRestoreFieldNameDictionaryFromChangelog() {
+        FieldNameDictionarySerde<Document> serde = new FieldNameDictionarySerde<>(Document.class, mapper);
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), serde, "code", (document) -> document, Map.of(), emptyList(), true);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        MockRecordCollector recordCollector = new MockRecordCollector();
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(0, new File(dir), new StateSerdes<>("name-changelog", Serdes.String(), Serdes.String()), recordCollector);
+        ctx.setTime(1L);
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix"));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded").put("year", 2003));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)"));
+
+        List<KeyValue<byte[], byte[]>> changelog = recordCollector.collected().stream()
+                .map((record) -> KeyValue.pair(((Bytes) record.key()).get(), (byte[]) record.value()))
+                .toList();
+        assertThat(changelog).hasSize(5);
+        assertThat(changelog).filteredOn((record) -> FieldNameDictionary.isChunkKey(record.key)).hasSize(2)
+                .extracting((record) -> Bytes.wrap(record.key)).containsOnly(Bytes.wrap(FieldNameDictionary.chunkKey(0)));
+
+        NitriteDocumentStore<String, Document> restored = new NitriteDocumentStore("name", Serdes.String(), serde, "code", (document) -> document, Map.of(), emptyList(), true);
+        String restoredDir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalMockProcessorContext restoredCtx = new InternalMockProcessorContext(new File(restoredDir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        restored.init((StateStoreContext) restoredCtx, restored);
+        restoredCtx.restore("name", changelog);
+
+        assertThat(restored.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertThat(restored.get("MTRX2").get("year")).isEqualTo(2003);
+    }
+
+    @Test
+    void shouldLogFieldNamesUnderTheSameChunkKeysAfterReopening() {
+        FieldNameDictionarySerde<Document> serde = new FieldNameDictionarySerde<>(Document.class, mapper);
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), serde, "code", (document) -> document, Map.of(), emptyList(), true);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        MockRecordCollector recordCollector = new MockRecordCollector();
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(0, new File(dir), new StateSerdes<>("name-changelog", Serdes.String(), Serdes.String()), recordCollector);
+        ctx.setTime(1L);
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix"));
+        store.flush();
+        store.close();
+
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("title", "The Matrix Reloaded"));
+
+        assertThat(recordCollector.collected())
+                .filteredOn((record) -> FieldNameDictionary.isChunkKey(((Bytes) record.key()).get()))
+                .extracting((record) -> (Bytes) record.key())
+                .containsExactly(Bytes.wrap(FieldNameDictionary.chunkKey(0)), Bytes.wrap(FieldNameDictionary.chunkKey(0)));
+    }
+
+    @Test
+    void shouldRejectFieldNameChunksConflictingWithTheDictionary() {
+        FieldNameDictionary dictionary = new FieldNameDictionary();
+        dictionary.idOf("code");
+        dictionary.idOf("title");
+        FieldNameDictionary conflicting = new FieldNameDictionary();
+        conflicting.idOf("code");
+        conflicting.idOf("year");
+
+        assertThatThrownBy(() -> dictionary.applyChunk(conflicting.encodeChunk(0))).isInstanceOf(SerializationException.class);
+        assertThat(dictionary.nameOf(1)).isEqualTo("title");
+    }
+
+    @Test
+    void shouldLogAndRestorePatchesOfUpdatedDocuments() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), true, null, 2, false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        MockRecordCollector recordCollector = new MockRecordCollector();
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(0, new File(dir), new StateSerdes<>("name-changelog", Serdes.String(), Serdes.String()), recordCollector);
+        ctx.setTime(1L);
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix").put("status", "draft"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix").put("status", "review"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix").put("status", "review"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix").put("status", "published"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)").put("status", "published"));
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("title", "The Matrix (1999)").put("status", "archived"));
+
+        List<KeyValue<byte[], byte[]>> changelog = recordCollector.collected().stream()
+                .map((record) -> KeyValue.pair(((Bytes) record.key()).get(), (byte[]) record.value()))
+                .toList();
+        // full, patch, patch, full, 2 patch tombstones, patch
+        assertThat(changelog).hasSize(7);
+        assertThat(changelog.stream().filter((record) -> ChangelogPatches.isPatchKey(record.key) && record.value != null)).hasSize(3);
+
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+        assertThat(serde.documentDeserializer().deserialize("topic", changelog.get(1).value).keySet()).containsExactly("status");
+
+        NitriteDocumentStore<String, Document> restored = new NitriteDocumentStore("name", Serdes.String(), serde, "code", (document) -> document, Map.of(), emptyList(), true, null, 2, false);
+        String restoredDir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalMockProcessorContext restoredCtx = new InternalMockProcessorContext(new File(restoredDir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        restored.init((StateStoreContext) restoredCtx, restored);
+        restoredCtx.restore("name", changelog.subList(0, 3));
+        assertThat(restored.get("MTRX1").get("status")).isEqualTo("published");
+        restoredCtx.restore("name", changelog.subList(3, 7));
+
+        assertThat(restored.get("MTRX1").get("title")).isEqualTo("The Matrix (1999)");
+        assertThat(restored.get("MTRX1").get("status")).isEqualTo("archived");
+    }
+
+    @Test
+    void shouldCoalesceChangelogRecordsUntilFlush() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of(), emptyList(), true, null, 0, true);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        MockRecordCollector recordCollector = new MockRecordCollector();
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(0, new File(dir), new StateSerdes<>("name-changelog", Serdes.String(), Serdes.String()), recordCollector);
+        ctx.setTime(1L);
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("status", "draft"));
+        store.put("NEO", Document.createDocument("code", "NEO").put("status", "draft"));
+        ctx.setTime(2L);
+        store.putAll(List.of(
+                KeyValue.pair("MTRX1", Document.createDocument("code", "MTRX1").put("status", "review")),
+                KeyValue.pair("MTRX1", Document.createDocument("code", "MTRX1").put("status", "published"))));
+        store.delete("NEO");
+
+        assertThat(store.get("MTRX1").get("status")).isEqualTo("published");
+        assertThat(recordCollector.collected()).isEmpty();
+
+        store.flush();
+
+        assertThat(recordCollector.collected()).hasSize(2);
+        assertThat(recordCollector.collected().get(0).key()).isEqualTo(Bytes.wrap(Serdes.String().serializer().serialize("topic", "MTRX1")));
+        assertThat(recordCollector.collected().get(0).timestamp()).isEqualTo(2L);
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+        assertThat(serde.deserializer().deserialize("topic", (byte[]) recordCollector.collected().get(0).value()).get("status")).isEqualTo("published");
+        assertThat(recordCollector.collected().get(1).value()).isNull();
+
+        store.flush();
+        assertThat(recordCollector.collected()).hasSize(2);
+    }
+
+    @Test
+    void shouldInsertNewKeysOfBatchAtOnce() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "drama"));
+
+        List<KeyValue<String, Document>> batch = new ArrayList<>();
+        for (int i = 0; i < NitriteDocumentStore.BULK_INSERT_THRESHOLD; i++) {
+            batch.add(KeyValue.pair("MOVIE" + i, Document.createDocument("code", "MOVIE" + i).put("genre", i % 2 == 0 ? "action" : "drama")));
+        }
+        batch.add(KeyValue.pair("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action")));
+        batch.add(KeyValue.pair("MOVIE1", Document.createDocument("code", "MOVIE1").put("title", "Sequel")));
+        store.putAll(batch);
+
+        assertThat(store.hasIndex("genre")).isTrue();
+        assertThat(store.find(Filters.eq("genre", "action")).totalCount()).isEqualTo(NitriteDocumentStore.BULK_INSERT_THRESHOLD / 2 + 1);
+        assertThat(store.get("MOVIE1").get("genre")).isEqualTo("drama");
+        assertThat(store.get("MOVIE1").get("title")).isEqualTo("Sequel");
+        assertThat(store.find(Filters.regex("code", ".*")).totalCount()).isEqualTo(NitriteDocumentStore.BULK_INSERT_THRESHOLD + 1);
+
+        store.close();
+        store.init((StateStoreContext) ctx, store);
+
+        assertThat(store.get("MOVIE999").get("genre")).isEqualTo("drama");
+    }
+
+    @Test
+    void shouldServeQueriesFromSnapshotTakenWhenQuerying() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "drama"));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("genre", "action"));
+
+        Cursor<Document> indexed = store.find(Filters.eq("genre", "drama"));
+        Cursor<Document> scanned = store.find(Filters.regex("code", ".*"));
+        Cursor<Document> sorted = store.findWithOptions(FindOptions.sort("code", SortOrder.Descending));
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action"));
+        store.delete("MTRX2");
+        store.put("MTRX3", Document.createDocument("code", "MTRX3").put("genre", "drama"));
+
+        assertThat(indexed.toList()).extracting((document) -> document.get("genre")).containsExactly("drama");
+        assertThat(scanned.toList()).extracting((document) -> document.get("code")).containsExactly("MTRX1", "MTRX2");
+        assertThat(sorted.toList()).extracting((document) -> document.get("code")).containsExactly("MTRX2", "MTRX1");
+        assertThat(store.find(Filters.eq("genre", "action")).toList()).extracting((document) -> document.get("code")).containsExactly("MTRX1");
+        assertThat(store.findWithOptions(FindOptions.limit(0, 5)).totalCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldAnswerIndexedQueriesOfPinnedSnapshotAsOfThePin() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "drama"));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("genre", "action"));
+
+        long snapshot = store.pinSnapshot(null);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action"));
+        store.delete("MTRX2");
+
+        assertThat(store.findWithOptions(Filters.eq("genre", "drama"), FindOptions.limit(0, 10), snapshot).toList())
+                .extracting((document) -> document.get("code")).containsExactly("MTRX1");
+        assertThat(store.findWithOptions(Filters.eq("genre", "action"), FindOptions.limit(0, 10), snapshot).toList())
+                .extracting((document) -> document.get("code")).containsExactly("MTRX2");
+        assertThat(store.findWithOptions(Filters.eq("genre", "action"), FindOptions.limit(0, 10), store.pinSnapshot(null)).toList())
+                .extracting((document) -> document.get("code")).containsExactly("MTRX1");
+        assertThat(store.find(Filters.eq("genre", "action")).toList()).extracting((document) -> document.get("code")).containsExactly("MTRX1");
+        QueryPlan current = store.explain(Filters.eq("genre", "action"), FindOptions.limit(0, 10));
+        assertThat(current.steps().get(0).indexed()).isTrue();
+    }
+
+    @Test
+    void shouldCloseDroppedPinnedSnapshotsOnceNoQueryReadsThem() {
+        Nitrite db = Nitrite.builder().openOrCreate();
+        CollectionInternals collectionInternals = new CollectionInternals(db.getCollection("name"));
+        List<DocumentSnapshot> taken = new ArrayList<>();
+        PinnedSnapshots pinnedSnapshots = new PinnedSnapshots(1, Duration.ofMinutes(1));
+        Supplier<DocumentSnapshot> snapshots = () -> {
+            DocumentSnapshot snapshot = collectionInternals.snapshot();
+            taken.add(snapshot);
+            return snapshot;
+        };
+
+        long first = pinnedSnapshots.pin(null, snapshots);
+        DocumentSnapshot reading = pinnedSnapshots.get(first);
+        pinnedSnapshots.pin(null, snapshots);
+        assertThat(pinnedSnapshots.get(first)).isNull();
+        reading.retain().close();
+        reading.close();
+        assertThatThrownBy(reading::retain).isInstanceOf(IllegalStateException.class);
+
+        pinnedSnapshots.clear();
+        assertThatThrownBy(taken.get(1)::retain).isInstanceOf(IllegalStateException.class);
+        db.close();
+    }
+
+    @Test
+    void shouldReleaseTheSnapshotOfACursorOnceItIsIteratedToTheEnd() {
+        Nitrite db = Nitrite.builder().openOrCreate();
+        NitriteCollection collection = db.getCollection("name");
+        collection.insert(new Document(Map.of("code", "a")));
+        CollectionInternals collectionInternals = new CollectionInternals(collection);
+        DocumentSnapshot snapshot = collectionInternals.snapshot();
+        ResultSetCursor cursor = new ResultSetCursor(new LinkedHashSet<>(snapshot.keySet()), snapshot, false, 1);
+
+        assertThat(cursor.toList()).hasSize(1);
+        assertThatThrownBy(snapshot::retain).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(cursor::toList).isInstanceOf(IllegalStateException.class);
+        db.close();
+    }
+
+    @Test
+    void shouldExplainWhichFilterNodesScanDocuments() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action").put("year", 1999));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("genre", "action").put("year", 2003));
+        store.put("SPEED", Document.createDocument("code", "SPEED").put("genre", "thriller").put("year", 1994));
+
+        QueryPlan plan = store.explain(Filters.and(Filters.eq("genre", "action"), Filters.gt("year", 2000)), FindOptions.sort("year", SortOrder.Ascending).thenLimit(0, 10));
+
+        assertThat(plan.indexed()).isFalse();
+        assertThat(plan.matched()).isEqualTo(1);
+        QueryPlan filter = plan.steps().get(0);
+        assertThat(filter.operation()).isEqualTo("and");
+        assertThat(filter.matched()).isEqualTo(1);
+        assertThat(filter.steps()).extracting(QueryPlan::operation, QueryPlan::field, QueryPlan::indexed, QueryPlan::scanned, QueryPlan::matched)
+                .containsExactly(tuple("eq", "genre", true, 0L, 2L), tuple("gt", "year", false, 3L, 1L));
+        assertThat(plan.steps().get(1)).extracting(QueryPlan::operation, QueryPlan::field, QueryPlan::scanned, QueryPlan::matched)
+                .containsExactly("sort", "year", 1L, 1L);
+        assertThat(plan.scans()).extracting(QueryPlan::field).containsExactly("year", "year");
+        assertThat(plan.scanned()).isEqualTo(4);
+
+        QueryPlan unfiltered = store.explain(null, FindOptions.limit(1, 1));
+        assertThat(unfiltered.steps()).extracting(QueryPlan::operation).containsExactly("all", "page");
+        assertThat(unfiltered.matched()).isEqualTo(1);
+
+        store.delete("MTRX1");
+        store.delete("MTRX2");
+        store.delete("SPEED");
+        QueryPlan empty = store.explain(Filters.and(Filters.eq("genre", "action"), Filters.gt("year", 2000)), FindOptions.limit(0, 10));
+        assertThat(empty.steps().get(0).steps()).extracting(QueryPlan::field, QueryPlan::indexed, QueryPlan::scanned)
+                .containsExactly(tuple("genre", true, 0L), tuple("year", false, 0L));
+    }
+
+    @Test
+    void shouldRecordStoreMetrics() {
+        MeteredNitriteDocumentStore<String, Document> store = new MeteredNitriteDocumentStore<>(new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false));
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        Metrics metrics = new Metrics(new MetricConfig().recordLevel(Sensor.RecordingLevel.DEBUG));
+        StreamsMetricsImpl streamsMetrics = new StreamsMetricsImpl(metrics, "mock", StreamsConfig.METRICS_LATEST, new MockTime());
+        InternalMockProcessorContext ctx = new InternalMockProcessorContext(0, new File(dir), Serdes.String(), Serdes.String(), streamsMetrics, new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")), MockRecordCollector::new, null, Time.SYSTEM);
+        store.init((StateStoreContext) ctx, store);
+
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action").put("year", 1999));
+        store.put("SPEED", Document.createDocument("code", "SPEED").put("genre", "thriller").put("year", 1994));
+        store.get("MTRX1");
+        assertThat(store.find(Filters.gt("year", 1995)).toList()).hasSize(1);
+        assertThat(store.find(Filters.eq("genre", "action")).toList()).hasSize(1);
+        DocumentSerde<Document> serde = new DocumentSerde<>(Document.class, mapper);
+        ctx.restore("name", List.of(changelogRecord(serde, "MTRX2", Document.createDocument("code", "MTRX2").put("genre", "action").put("year", 2003))));
+
+        assertThat((Double) metricValue(metrics, "put-rate")).isPositive();
+        assertThat((Double) metricValue(metrics, "get-latency-max")).isNotNegative();
+        assertThat((Double) metricValue(metrics, "find-rate")).isPositive();
+        assertThat((Double) metricValue(metrics, "restore-rate")).isPositive();
+        assertThat(metricValue(metrics, "documents-scanned-total")).isEqualTo(2.0);
+        assertThat(metricValue(metrics, "documents-returned-total")).isEqualTo(2.0);
+        assertThat(metricValue(metrics, "records-restored-total")).isEqualTo(1.0);
+        assertThat((Long) metricValue(metrics, "file-size-bytes")).isPositive();
+
+        store.close();
+
+        assertThat(metrics.metrics().keySet()).noneMatch(name -> "name".equals(name.tags().get("nitrite-state-id")));
+    }
+
+    @Test
+    void shouldLogSlowQueriesByFingerprint() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false);
+        SlowQueryLog slowQueryLog = new SlowQueryLog(Duration.ofMinutes(1), 2, 10);
+        store.logSlowQueriesTo(slowQueryLog);
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action").put("year", 1999));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("genre", "action").put("year", 2003));
+        store.put("SPEED", Document.createDocument("code", "SPEED").put("genre", "thriller").put("year", 1994));
+
+        store.find(Filters.eq("genre", "action"));
+        store.findWithOptions(Filters.and(Filters.eq("genre", "action"), Filters.gt("year", 2000)), FindOptions.sort("year", SortOrder.Ascending));
+        store.findWithOptions(Filters.and(Filters.eq("genre", "thriller"), Filters.gt("year", 1990)), FindOptions.sort("year", SortOrder.Ascending));
+        store.findWithOptions(Filters.or(Filters.eq("genre", "drama"), Filters.not(Filters.lt("year", 2000))), FindOptions.limit(0, 1));
+
+        assertThat(slowQueryLog.top()).extracting(SlowQueryLog.SlowQuery::fingerprint, SlowQueryLog.SlowQuery::partition, SlowQueryLog.SlowQuery::count, SlowQueryLog.SlowQuery::scanned)
+                .containsExactlyInAnyOrder(
+                        tuple("and(eq(genre),gt(year)) sort(year)", 0, 2L, 8L),
+                        tuple("or(eq(genre),not(lt(year)))", 0, 1L, 6L));
+        assertThat(SlowQueryLog.fingerprint(null, FindOptions.limit(0, 1))).isEqualTo("all");
+
+        slowQueryLog.reset();
+        assertThat(slowQueryLog.top()).isEmpty();
+    }
+
+    @Test
+    void shouldRecommendAndCreateIndicesOnScannedFields() {
+        NitriteDocumentStore<String, Document> store = new NitriteDocumentStore("name", Serdes.String(), new DocumentSerde<>(Document.class, mapper), "code", (document) -> document, Map.of("genre", indexOptions(NonUnique)), emptyList(), false);
+        store.adviseIndicesWith(new IndexAdvisor(5, true));
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("MTRX1", Document.createDocument("code", "MTRX1").put("genre", "action").put("year", 1999));
+        store.put("MTRX2", Document.createDocument("code", "MTRX2").put("genre", "action").put("year", 2003));
+        store.put("SPEED", Document.createDocument("code", "SPEED").put("genre", "thriller").put("year", 1994));
+
+        store.findWithOptions(Filters.and(Filters.eq("genre", "action"), Filters.gt("year", 2000)), FindOptions.sort("title", SortOrder.Ascending));
+        assertThat(store.recommendIndices()).isEmpty();
+        store.find(Filters.and(Filters.eq("genre", "action"), Filters.regex("title", "Matrix"), Filters.eq("year", 1999)));
+
+        assertThat(store.recommendIndices()).containsExactly(new IndexRecommendation("year", 1, 1, 0, 9, true));
+        assertThat(store.hasIndex("year")).isFalse();
+        store.flush();
+        await().atMost(10, SECONDS).until(() -> store.hasIndex("year") && !store.isIndexing("year"));
+
+        store.find(Filters.lt("year", 2000));
+        assertThat(store.recommendIndices()).containsExactly(new IndexRecommendation("year", 1, 2, 0, 9, true));
+    }
+
+    @Test
+    void shouldFindPrefixAndRangeThroughCompoundIndex() {
+        NitriteDocumentStoreBuilder<String, Document> builder = DocumentStores.nitriteStore("name", "code", Serdes.String(), Document.class, mapper)
+                .withLoggingDisabled()
+                .withCompoundIndex("tenant", "date");
+        NitriteDocumentStore<String, Document> store = builder.build();
+        String dir = String.format("%s/NitriteDocumentStoreTest/%s",
+                System.getProperty("java.io.tmpdir"), UUID.randomUUID());
+        InternalProcessorContext ctx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        store.init((StateStoreContext) ctx, store);
+        store.put("A1", Document.createDocument("code", "A1").put("tenant", "a").put("date", "2024-01-15"));
+        store.put("A2", Document.createDocument("code", "A2").put("tenant", "a").put("date", "2024-02-10"));
+        store.put("A3", Document.createDocument("code", "A3").put("tenant", "a").put("date", "2024-03-05"));
+        store.put("B1", Document.createDocument("code", "B1").put("tenant", "b").put("date", "2024-02-20"));
+        store.put("A4", Document.createDocument("code", "A4").put("tenant", "a"));
+
+        Filter dashboard = Filters.and(Filters.eq("tenant", "a"), Filters.gte("date", "2024-02-01"));
+        assertThat(store.find(dashboard).toList()).extracting((document) -> document.get("code")).containsExactly("A2", "A3");
+        QueryPlan plan = store.explain(dashboard, FindOptions.limit(0, 10));
+        assertThat(plan.steps()).extracting(QueryPlan::operation, QueryPlan::field, QueryPlan::indexed, QueryPlan::matched)
+                .containsExactly(tuple("compound", "tenant,date", true, 2L), tuple("and", null, true, 2L), tuple("page", null, false, 2L));
+        assertThat(plan.steps().get(1).steps()).extracting(QueryPlan::scanned).containsExactly(2L, 2L);
+
+        store.put("A1", Document.createDocument("code", "A1").put("tenant", "a").put("date", "2024-04-01"));
+        store.delete("A2");
+        assertThat(store.find(dashboard).toList()).extracting((document) -> document.get("code")).containsExactly("A3", "A1");
+        assertThat(store.find(Filters.and(Filters.eq("tenant", "a"), Filters.gt("date", "2024-03-05"))).toList())
+                .extracting((document) -> document.get("code")).containsExactly("A1");
+        assertThat(store.find(Filters.and(Filters.eq("tenant", "a"), Filters.lt("date", "2024-03-10"))).toList())
+                .extracting((document) -> document.get("code")).containsExactly("A3");
+        assertThat(store.findWithOptions(Filters.eq("tenant", "a"), FindOptions.limit(0, 10)).toList())
+                .extracting((document) -> document.get("code")).containsExactly("A4", "A3", "A1");
+
+        long snapshot = store.pinSnapshot(null);
+        store.put("A3", Document.createDocument("code", "A3").put("tenant", "a").put("date", "2024-01-01"));
+        store.put("B1", Document.createDocument("code", "B1").put("tenant", "a").put("date", "2024-02-20"));
+        assertThat(store.findWithOptions(dashboard, FindOptions.limit(0, 10), snapshot).toList())
+                .extracting((document) -> document.get("code")).containsExactlyInAnyOrder("A3", "A1");
+        assertThat(store.find(dashboard).toList()).extracting((document) -> document.get("code")).containsExactly("B1", "A1");
+        store.put("B1", Document.createDocument("code", "B1").put("tenant", "b").put("date", "2024-02-20"));
+        store.put("A3", Document.createDocument("code", "A3").put("tenant", "a").put("date", "2024-03-05"));
+        store.flush();
+        store.close();
+
+        NitriteDocumentStore<String, Document> reopened = builder.build();
+        InternalMockProcessorContext reopenedCtx = new InternalMockProcessorContext(new File(dir), new StreamsConfig(Map.of("application.id", "test", "bootstrap.servers", "mock://mock.com")));
+        reopened.init((StateStoreContext) reopenedCtx, reopened);
+        assertThat(reopened.find(dashboard).toList()).extracting((document) -> document.get("code")).containsExactly("A3", "A1");
+    }
+
+    private Object metricValue(Metrics metrics, String name) {
+        return metrics.metrics().entrySet().stream()
+                .filter(entry -> entry.getKey().name().equals(name) && "name".equals(entry.getKey().tags().get("nitrite-state-id")))
+                .map(entry -> entry.getValue().metricValue())
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No metric " + name));
+    }
+
+    private ProcessorStateManager stateManager(StateDirectory stateDirectory, TaskId taskId, TopicPartition changelog) {
+        ChangelogRegister changelogRegister = new ChangelogRegister() {
+            @Override
+            public void register(TopicPartition partition, ProcessorStateManager stateManager) {
+            }
+
+            @Override
+            public void unregister(Collection<TopicPartition> partitions) {
+            }
+        };
+        return new ProcessorStateManager(taskId, Task.TaskType.ACTIVE, false, new LogContext(), stateDirectory, changelogRegister, Map.of("name", changelog.topic()), Set.of());
+    }
+
+    private ConsumerRecord<byte[], byte[]> changelogConsumerRecord(DocumentSerde<Document> serde, long offset, String key, Document value) {
+        KeyValue<byte[], byte[]> record = changelogRecord(serde, key, value);
+        return new ConsumerRecord<>("test-name-changelog", 0, offset, record.key, record.value);
+    }
+
+    private KeyValue<byte[], byte[]> changelogRecord(DocumentSerde<Document> serde, String key, Document value) {
+        return KeyValue.pair(Serdes.String().serializer().serialize("topic", key), serde.serializer().serialize("topic", value));
+    }
+
+}
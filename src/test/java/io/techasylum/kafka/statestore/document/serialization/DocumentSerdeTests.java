@@ -9,6 +9,7 @@ import java.util.List;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.dizitart.no2.Document;
 import org.junit.jupiter.api.Test;
 
@@ -130,4 +131,22 @@ class DocumentSerdeTests {
 		assertThat(document.getATimestamp()).isEqualTo(Instant.parse("2022-06-11T12:58:30.396Z"));
 	}
 
-}
\ No newline at end of file
+	@Test
+	void shouldRoundTripSmileAndStillReadJson() {
+		final ObjectMapper jsonMapper = new ObjectMapper().findAndRegisterModules();
+		final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+		DocumentSerde<Document> smileSerde = DocumentSerde.smile(Document.class, smileMapper, jsonMapper);
+
+		final Document fromJson = smileSerde.deserializer().deserialize("my-topic", JSON.getBytes());
+		final byte[] smile = smileSerde.serializer().serialize("my-topic", fromJson);
+		assertThat(smile.length).isLessThan(JSON.replaceAll("\\s", "").length());
+
+		final Document fromSmile = smileSerde.deserializer().deserialize("my-topic", smile);
+		assertThat(fromSmile.getId()).isEqualTo(fromJson.getId());
+		assertThat(fromSmile.get("embedded", LinkedHashMap.class).get("bar")).isEqualTo("baz");
+		assertThat(fromSmile.get("children")).asList().containsExactly(1, 2);
+		assertThat(fromSmile.get("aBigInteger", BigInteger.class)).isEqualTo("12345678901234567890");
+		assertThat(fromSmile.get("aTimestamp", String.class)).isEqualTo("2022-06-11T12:58:30.396Z");
+	}
+
+}
@@ -0,0 +1,24 @@
+package org.apache.kafka.streams.processor.internals;
+
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Drives the package-private parts of {@link ProcessorStateManager} the way the changelog reader of a stream thread
+ * does, so the tests can check what Kafka Streams checkpoints and restores for a store.
+ */
+public final class ChangelogRestoration {
+
+    private ChangelogRestoration() {
+    }
+
+    public static void initializeOffsetsFromCheckpoint(ProcessorStateManager stateManager, boolean storeDirIsEmpty) {
+        stateManager.initializeStoreOffsetsFromCheckpoint(storeDirIsEmpty);
+    }
+
+    public static void restore(ProcessorStateManager stateManager, TopicPartition changelogPartition, List<ConsumerRecord<byte[], byte[]>> records) {
+        stateManager.restore(stateManager.storeMetadata(changelogPartition), records);
+    }
+}